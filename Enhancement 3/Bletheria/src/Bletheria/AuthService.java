@@ -0,0 +1,72 @@
+package Bletheria;
+
+/**
+ * AuthService runs logins and registrations off the caller's thread.
+ *
+ * Password hashing is deliberately slow, so it runs on a small dedicated
+ * pool with a bounded queue. Game-loop and network threads get a
+ * CompletableFuture back immediately, and the pool size caps how much CPU
+ * hashing can take. When the queue is full the future fails right away
+ * with a RejectedExecutionException, which callers report as "busy".
+ *
+ * Results use the same convention as StateStore: a user ID, or -1.
+ */
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+public class AuthService {
+    private final StateStore db;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AuthService(StateStore db) {
+        this(db,
+             Integer.getInteger("bletheria.auth.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+             Integer.getInteger("bletheria.auth.queue", 64));
+    }
+
+    public AuthService(StateStore db, int threads, int queueSize) {
+        this.db = db;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            r -> {
+                Thread t = new Thread(r, "bletheria-auth-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public CompletableFuture<Integer> authenticate(String username, String plainPassword) {
+        return submit(() -> db.authenticateUser(username, plainPassword));
+    }
+
+    public CompletableFuture<Integer> register(String username, String plainPassword) {
+        return submit(() -> db.registerUser(username, plainPassword));
+    }
+
+    // Hashing/queue metrics
+    public int getQueued() { return executor.getQueue().size(); }
+    public int getActive() { return executor.getActiveCount(); }
+    public long getRejected() { return rejected.get(); }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private CompletableFuture<Integer> submit(Supplier<Integer> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package Bletheria;
+
+/**
+ * AutosavePolicy decides when a session checkpoints its player without
+ * being asked to.
+ *
+ * A checkpoint only writes when the Player is dirty (changed since its
+ * last save), so a clean session is never written however often a
+ * trigger fires. The triggers are:
+ * - onItem: a new item was equipped during the last command line
+ * - everyCommands: this many commands have run since the last save
+ * - everyMillis: this long has passed since the last save
+ * - onDisconnect: the player exits or the session is closed
+ *
+ * A zero count or interval turns that trigger off. The defaults can be
+ * tuned with -Dbletheria.autosave.onItem, -Dbletheria.autosave.commands,
+ * -Dbletheria.autosave.millis and -Dbletheria.autosave.onDisconnect.
+ */
+import java.util.concurrent.TimeUnit;
+
+public record AutosavePolicy(boolean onItem, int everyCommands, long everyMillis, boolean onDisconnect) {
+
+    private static final AutosavePolicy DEFAULT = new AutosavePolicy(
+        Boolean.parseBoolean(System.getProperty("bletheria.autosave.onItem", "true")),
+        Integer.getInteger("bletheria.autosave.commands", 20),
+        Long.getLong("bletheria.autosave.millis",
+                     Long.getLong("bletheria.session.autosaveMillis", TimeUnit.MINUTES.toMillis(5))),
+        Boolean.parseBoolean(System.getProperty("bletheria.autosave.onDisconnect", "true")));
+
+    // Only explicit 'save' commands write
+    public static final AutosavePolicy MANUAL = new AutosavePolicy(false, 0, 0, false);
+
+    public static AutosavePolicy getDefault() {
+        return DEFAULT;
+    }
+
+    // True when a dirty player should be checkpointed after a command line
+    public boolean due(int commandsSinceSave, long millisSinceSave, boolean itemSinceSave) {
+        return (onItem && itemSinceSave)
+            || (everyCommands > 0 && commandsSinceSave >= everyCommands)
+            || (everyMillis > 0 && millisSinceSave >= everyMillis);
+    }
+}
@@ -8,17 +8,33 @@ import java.util.Scanner;
 
 public class Bletheria {
     public static void main(String[] args) {
+        // A bad token secret would otherwise only show up at the first login
+        String tokenProblem = SessionTokens.secretProblem();
+        if (tokenProblem != null) {
+            System.out.println(tokenProblem);
+            return;
+        }
+
         // Create a Scanner for user input
         Scanner scanner = new Scanner(System.in);
 
         // Build the game world
         WorldMap world = new WorldMap();
         
-        // Initialize the database manager (SQLite)
-        DatabaseManager db = new DatabaseManager();
+        // Open the state store (SQLite unless -Dbletheria.store=memory)
+        StateStore db = StateStore.open();
+
+        // One hashing pool and login gate for every login in this process
+        AuthService auth = new AuthService(db);
 
         // Run the setup sequence and create a Player object
-        Player player = GameEngine.runIntroSetup(scanner, world, db);
+        Player player = GameEngine.runIntroSetup(scanner, world, db, LoginAdmission.getDefault(), auth);
+        auth.shutdown();
+        if (player == null) {
+            scanner.close();
+            db.close();
+            return;
+        }
 
         // Initialize the ending resolver
         EndingResolver endings = new EndingResolver();
@@ -29,5 +45,6 @@ public class Bletheria {
 
         // Clean up
         scanner.close();
+        db.close();
     }
 }
@@ -0,0 +1,361 @@
+package Bletheria;
+
+/**
+ * BulkTransfer moves users and their saves between SQLite databases
+ * (e.g. from staging to production) without going through registerUser
+ * and savePlayerState one account at a time.
+ *
+ * It works on the store -Dbletheria.store names, either sqlite or
+ * sharded. On a ShardedStateStore the export walks every shard, and the
+ * import claims each batch's user IDs in the UserDirectory before writing
+ * the accounts to their shards. Since the file doesn't depend on the
+ * layout, exporting with one -Dbletheria.db.shards and importing into a
+ * new set of files with another is how the shard count is changed.
+ *
+ * Export streams users joined with their save straight from a cursor to
+ * a text file, one account per line, so memory use doesn't grow with the
+ * number of accounts:
+ *     #bletheria-export v1
+ *     user_id TAB username TAB password_hash TAB room TAB attribute TAB items
+ * Room, attribute and items (comma-separated) are empty for accounts
+ * without a save. Tabs, newlines and backslashes are escaped.
+ *
+ * Import reads the file as a stream and writes BATCH_SIZE accounts per
+ * transaction with batched prepared statements. Password hashes are copied
+ * as they are, so nothing is re-hashed. User IDs are kept; an account whose
+ * ID or username already exists is skipped (with its save). After every
+ * commit the number of lines done is written to <file>.progress, and a
+ * rerun continues from there. The inserts are idempotent, so redoing part
+ * of a batch after a crash is harmless; directory rows a crash leaves
+ * pending are settled when the sharded store next opens.
+ *
+ * Usage: java Bletheria.BulkTransfer export|import <file>
+ */
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public class BulkTransfer {
+    private static final String HEADER = "#bletheria-export v1";
+    private static final int BATCH_SIZE = Integer.getInteger("bletheria.bulk.batchSize", 10_000);
+    private static final int REPORT_EVERY = 100_000;
+
+    private static final String EXPORT_SQL = """
+        SELECT u.user_id, u.username, u.password_hash,
+               s.current_room, s.attribute, s.state_blob,
+               CASE WHEN s.user_id IS NOT NULL AND s.state_blob IS NULL THEN
+                   (SELECT group_concat(item_id, ',') FROM player_inventory i WHERE i.user_id = u.user_id)
+               END AS items
+        FROM users u LEFT JOIN player_state s ON s.user_id = u.user_id
+        ORDER BY u.user_id
+        """;
+
+    // Counts reported while a transfer runs (and at the end)
+    public record Progress(long lines, long written, long skipped) { }
+
+    private final DatabaseManager[] databases;
+    private final ShardedStateStore sharded;   // null for a single database
+
+    public BulkTransfer(DatabaseManager db) {
+        this.databases = new DatabaseManager[] { db };
+        this.sharded = null;
+    }
+
+    public BulkTransfer(ShardedStateStore store) {
+        this.databases = new DatabaseManager[store.getShardCount()];
+        for (int i = 0; i < databases.length; i++) {
+            databases[i] = store.getShard(i);
+        }
+        this.sharded = store;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 || !(args[0].equals("export") || args[0].equals("import"))) {
+            System.out.println("Usage: java Bletheria.BulkTransfer export|import <file>");
+            return;
+        }
+        StateStore store = StateStore.openBackend();
+        try {
+            BulkTransfer transfer;
+            if (store instanceof ShardedStateStore shardedStore) {
+                transfer = new BulkTransfer(shardedStore);
+            } else if (store instanceof DatabaseManager db) {
+                transfer = new BulkTransfer(db);
+            } else {
+                System.out.println("BulkTransfer works on the sqlite and sharded stores only.");
+                return;
+            }
+            Consumer<Progress> report = p -> System.out.println(
+                args[0] + ": " + p.lines() + " lines, " + p.written() + " written, " + p.skipped() + " skipped");
+            long start = System.currentTimeMillis();
+            Progress done = args[0].equals("export")
+                ? transfer.exportTo(Path.of(args[1]), report)
+                : transfer.importFrom(Path.of(args[1]), report);
+            report.accept(done);
+            System.out.println("Finished in " + (System.currentTimeMillis() - start) / 1000 + "s.");
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Writes every account and its save to the file (shard by shard on a
+     * sharded store).
+     */
+    public Progress exportTo(Path file, Consumer<Progress> progress) throws IOException, SQLException {
+        long lines = 0;
+        long reportAt = REPORT_EVERY;
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.write('\n');
+            for (DatabaseManager db : databases) {
+                db.flushSaves();   // queued saves would otherwise be missing
+                try (ConnectionPool.Lease lease = db.getPool().borrow()) {
+                    PreparedStatement ps = lease.prepare(EXPORT_SQL);
+                    ps.setFetchSize(BATCH_SIZE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            PlayerState state = readState(rs);
+                            out.write(Integer.toString(rs.getInt("user_id")));
+                            field(out, rs.getString("username"));
+                            field(out, rs.getString("password_hash"));
+                            field(out, state == null ? "" : state.currentRoom);
+                            field(out, state == null ? "" : state.attribute);
+                            field(out, state == null ? "" : String.join(",", state.inventory));
+                            out.write('\n');
+                            if (++lines >= reportAt) {
+                                progress.accept(new Progress(lines, lines, 0));
+                                reportAt += REPORT_EVERY;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return new Progress(lines, lines, 0);
+    }
+
+    //the save on the current export row, or null if the account has none
+    private static PlayerState readState(ResultSet rs) throws SQLException {
+        byte[] blob = rs.getBytes("state_blob");
+        String room = rs.getString("current_room");
+        if (blob == null && room == null) {
+            return null;
+        }
+        PlayerState state = new PlayerState();
+        if (blob != null) {
+            SaveCodec.decode(blob, state);
+            return state;
+        }
+        state.currentRoom = room;
+        state.attribute = rs.getString("attribute");
+        String items = rs.getString("items");
+        if (items != null) {
+            state.inventory.addAll(List.of(items.split(",")));
+        }
+        return state;
+    }
+
+    /**
+     * Imports the file in batched transactions, resuming after the last
+     * batch a previous run committed.
+     */
+    public Progress importFrom(Path file, Consumer<Progress> progress) throws IOException, SQLException {
+        Path progressFile = file.resolveSibling(file.getFileName() + ".progress");
+        long resumeAt = Files.exists(progressFile)
+            ? Long.parseLong(Files.readString(progressFile).trim()) : 0;
+        if (resumeAt > 0) {
+            System.out.println("Resuming import after line " + resumeAt + ".");
+        }
+
+        long lines = 0;
+        long written = 0;
+        long skipped = 0;
+        long reportAt = resumeAt + REPORT_EVERY;
+        List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            if (!HEADER.equals(header)) {
+                throw new IOException("Not a Bletheria export file: " + file);
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (++lines <= resumeAt || line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = split(line);
+                if (fields.length != 6) {
+                    throw new IOException("Bad record on line " + (lines + 1) + " of " + file);
+                }
+                batch.add(fields);
+                if (batch.size() == BATCH_SIZE) {
+                    int inserted = writeBatch(batch);
+                    written += inserted;
+                    skipped += batch.size() - inserted;
+                    batch.clear();
+                    Files.writeString(progressFile, Long.toString(lines));
+                    if (lines >= reportAt) {
+                        progress.accept(new Progress(lines, written, skipped));
+                        reportAt += REPORT_EVERY;
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                int inserted = writeBatch(batch);
+                written += inserted;
+                skipped += batch.size() - inserted;
+            }
+        }
+        Files.deleteIfExists(progressFile);   // finished; a rerun starts over
+        return new Progress(lines, written, skipped);
+    }
+
+    //writes one batch, through the directory to the shards on a sharded store
+    private int writeBatch(List<String[]> batch) throws SQLException {
+        if (sharded == null) {
+            return writeBatch(databases[0], batch);
+        }
+        int[] userIds = new int[batch.size()];
+        String[] usernames = new String[batch.size()];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = Integer.parseInt(batch.get(i)[0]);
+            usernames[i] = batch.get(i)[1];
+        }
+        // directory first: a crash before the shards commit leaves pending rows, which are settled on open
+        boolean[] claimed = sharded.getDirectory().claim(userIds, usernames);
+        Map<DatabaseManager, List<String[]>> byShard = new IdentityHashMap<>();
+        List<Integer> claimedIds = new ArrayList<>();
+        for (int i = 0; i < claimed.length; i++) {
+            if (claimed[i]) {
+                byShard.computeIfAbsent(sharded.shardFor(userIds[i]), s -> new ArrayList<>()).add(batch.get(i));
+                claimedIds.add(userIds[i]);
+            }
+        }
+        int inserted = 0;
+        for (Map.Entry<DatabaseManager, List<String[]>> shard : byShard.entrySet()) {
+            inserted += writeBatch(shard.getKey(), shard.getValue());
+        }
+        sharded.getDirectory().confirm(claimedIds.stream().mapToInt(Integer::intValue).toArray());
+        return inserted;
+    }
+
+    //inserts one batch of accounts and the saves of those that were new, in one transaction
+    private static int writeBatch(DatabaseManager db, List<String[]> batch) throws SQLException {
+        try (ConnectionPool.Lease lease = db.getPool().borrow()) {
+            Connection conn = lease.connection();
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement users = lease.prepare(DatabaseManager.INSERT_USER_WITH_ID);
+                for (String[] f : batch) {
+                    users.setInt(1, Integer.parseInt(f[0]));
+                    users.setString(2, f[1]);
+                    users.setString(3, f[2]);
+                    users.addBatch();
+                }
+                int[] results = users.executeBatch();
+
+                PreparedStatement states = lease.prepare(DatabaseManager.UPSERT_STATE);
+                PreparedStatement items = lease.prepare(DatabaseManager.INSERT_ITEM);
+                int inserted = 0;
+                boolean anyStates = false;
+                boolean anyItems = false;
+                for (int i = 0; i < batch.size(); i++) {
+                    if (results[i] == 0) {
+                        continue;   // existing ID or username: leave that account alone
+                    }
+                    inserted++;
+                    String[] f = batch.get(i);
+                    if (f[3].isEmpty()) {
+                        continue;   // no save
+                    }
+                    PlayerState state = new PlayerState();
+                    state.userId = Integer.parseInt(f[0]);
+                    state.currentRoom = f[3];
+                    state.attribute = f[4];
+                    if (!f[5].isEmpty()) {
+                        state.inventory.addAll(List.of(f[5].split(",")));
+                    }
+                    byte[] blob = SaveCodec.encode(state);
+                    states.setInt(1, state.userId);
+                    states.setString(2, blob == null ? state.currentRoom : "");
+                    states.setString(3, blob == null ? state.attribute : "");
+                    states.setBytes(4, blob);
+                    states.addBatch();
+                    anyStates = true;
+                    for (String item : state.inventory) {
+                        items.setInt(1, state.userId);
+                        items.setString(2, item);
+                        items.addBatch();
+                        anyItems = true;
+                    }
+                    db.getStateCache().invalidate(state.userId);
+                }
+                if (anyStates) {
+                    states.executeBatch();
+                }
+                if (anyItems) {
+                    items.executeBatch();
+                }
+                conn.commit();
+                return inserted;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    //---- line format
+
+    private static void field(Writer out, String value) throws IOException {
+        out.write('\t');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.write("\\\\");
+                case '\t' -> out.write("\\t");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                default -> out.write(c);
+            }
+        }
+    }
+
+    private static String[] split(String line) {
+        List<String> fields = new ArrayList<>(6);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                sb.append(switch (next) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> next;
+                });
+            } else {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,171 @@
+package Bletheria;
+
+/**
+ * ConnectionPool is a small, fixed-size JDBC connection pool.
+ *
+ * Connections are opened lazily up to the pool size. Each pooled
+ * connection keeps its own PreparedStatements keyed by SQL text, so a
+ * query is only parsed the first time a given connection runs it.
+ * Checkout waits at most the configured timeout and then fails with an
+ * SQLException instead of hanging. Basic metrics are kept for tuning.
+ *
+ * Usage:
+ *     try (ConnectionPool.Lease lease = pool.borrow()) {
+ *         PreparedStatement ps = lease.prepare(sql);   // do not close ps
+ *         ...
+ *     }
+ */
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConnectionPool {
+    private final String url;
+    private final int maxSize;
+    private final long checkoutTimeoutMillis;
+    private final BlockingQueue<Lease> idle;
+    private final List<Lease> all = new ArrayList<>();
+
+    // Metrics
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicLong checkouts = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    public ConnectionPool(String url, int maxSize, long checkoutTimeoutMillis) {
+        this.url = url;
+        this.maxSize = maxSize;
+        this.checkoutTimeoutMillis = checkoutTimeoutMillis;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    /**
+     * One checked-out connection. Closing the lease returns the connection
+     * to the pool; it does not close the connection or its statements.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Connection conn;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private Lease(Connection conn) {
+            this.conn = conn;
+        }
+
+        public Connection connection() { return conn; }
+
+        // Cached statement for this SQL, with parameters cleared
+        public PreparedStatement prepare(String sql) throws SQLException {
+            return prepare(sql, Statement.NO_GENERATED_KEYS);
+        }
+
+        public PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+            String key = autoGeneratedKeys + ":" + sql;
+            PreparedStatement ps = statements.get(key);
+            if (ps == null) {
+                statementMisses.incrementAndGet();
+                ps = conn.prepareStatement(sql, autoGeneratedKeys);
+                statements.put(key, ps);
+            } else {
+                statementHits.incrementAndGet();
+                ps.clearParameters();
+            }
+            return ps;
+        }
+
+        @Override
+        public void close() {
+            inUse.decrementAndGet();
+            idle.offer(this);
+        }
+
+        private void closeQuietly() {
+            for (PreparedStatement ps : statements.values()) {
+                try { ps.close(); } catch (SQLException ignored) { }
+            }
+            try { conn.close(); } catch (SQLException ignored) { }
+        }
+    }
+
+    // Checks out a connection, opening a new one if the pool isn't full yet
+    public Lease borrow() throws SQLException {
+        long start = System.nanoTime();
+        Lease lease = idle.poll();
+        if (lease == null) {
+            lease = tryCreate();
+        }
+        if (lease == null) {
+            try {
+                lease = idle.poll(checkoutTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a database connection");
+            }
+        }
+        if (lease == null) {
+            timeouts.incrementAndGet();
+            throw new SQLException("Timed out waiting for a database connection");
+        }
+        waitNanos.addAndGet(System.nanoTime() - start);
+        checkouts.incrementAndGet();
+        inUse.incrementAndGet();
+        return lease;
+    }
+
+    private synchronized Lease tryCreate() throws SQLException {
+        if (all.size() >= maxSize) {
+            return null;
+        }
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + checkoutTimeoutMillis);
+            stmt.execute("PRAGMA synchronous = NORMAL"); // safe with WAL; fsync at checkpoints only
+        }
+        Lease lease = new Lease(conn);
+        all.add(lease);
+        created.incrementAndGet();
+        return lease;
+    }
+
+    public synchronized void close() {
+        for (Lease lease : all) {
+            lease.closeQuietly();
+        }
+        all.clear();
+        idle.clear();
+    }
+
+    // Pool metrics
+    public int getCreated() { return created.get(); }
+    public int getInUse() { return inUse.get(); }
+    public long getCheckouts() { return checkouts.get(); }
+    public long getTimeouts() { return timeouts.get(); }
+    public long getStatementHits() { return statementHits.get(); }
+    public long getStatementMisses() { return statementMisses.get(); }
+
+    public double getAverageWaitMillis() {
+        long n = checkouts.get();
+        return n == 0 ? 0.0 : waitNanos.get() / 1_000_000.0 / n;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionPool[created=%d/%d, inUse=%d, checkouts=%d, timeouts=%d, "
+                + "avgWait=%.2fms, stmtHits=%d, stmtMisses=%d]",
+                getCreated(), maxSize, getInUse(), getCheckouts(), getTimeouts(),
+                getAverageWaitMillis(), getStatementHits(), getStatementMisses());
+    }
+}
@@ -1,28 +1,110 @@
 package Bletheria;
 
 /**
- * DatabaseManager handles all SQLite interactions:
+ * DatabaseManager is the SQLite StateStore and handles all SQLite interactions:
  * - User registration and authentication with hashed passwords
+ *   (salted PBKDF2 via PasswordHasher; legacy SHA-256 hashes are upgraded
+ *   on the next successful login)
  * - Saving and loading player state (room, inventory, attribute)
  *
+ * Inventory lives in its own player_inventory table, one row per item, and
+ * a save only inserts the items picked up since the previous save. Older
+ * databases that kept the inventory as a CSV column are migrated at startup.
+ *
+ * The authoritative copy of a save is a few bytes in player_state.state_blob
+ * (see SaveCodec); loading it is one row and no string parsing. Rows
+ * written before the blob existed, or states SaveCodec can't represent,
+ * use the text columns and are still read the old way.
+ *
+ * Connections come from a small ConnectionPool so concurrent sessions
+ * don't share one Connection, and each pooled connection caches its
+ * prepared statements so queries are not re-parsed on every call.
+ *
+ * Saves are write-behind: savePlayerState queues a snapshot in a SaveQueue
+ * and returns at once. The queue keeps only the latest state per user and
+ * writes many users' saves as one upsert batch in one transaction, on a
+ * database in WAL mode. close() (or JVM shutdown) flushes pending saves.
+ *
+ * Named save slots and their history live in save_history (see SaveHistory).
+ *
+ * Loaded states are kept in an LRU PlayerStateCache that every save also
+ * updates, so reconnects are usually served without touching the database.
+ * States handed out by loadPlayerState are shared and must be treated as
+ * read-only.
  */
 import java.sql.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
-public class DatabaseManager {
+public class DatabaseManager implements StateStore {
 
     private static final String DB_URL = "jdbc:sqlite:bletheria.db";
-    private Connection conn;
+    private static final int POOL_SIZE = Integer.getInteger("bletheria.db.poolSize", 4);
+    private static final long CHECKOUT_TIMEOUT_MS = Long.getLong("bletheria.db.checkoutMillis", 5000L);
+
+    private static final long SAVE_FLUSH_MS = Long.getLong("bletheria.db.saveFlushMillis", 50L);
+    private static final int STATE_CACHE_SIZE = Integer.getInteger("bletheria.db.stateCacheSize", 10_000);
+
+    // Also used by BulkTransfer
+    static final String UPSERT_STATE = """
+        INSERT INTO player_state(user_id, current_room, attribute, state_blob)
+        VALUES(?, ?, ?, ?)
+        ON CONFLICT(user_id) DO UPDATE SET
+            current_room = excluded.current_room,
+            attribute = excluded.attribute,
+            state_blob = excluded.state_blob;
+        """;
+
+    static final String INSERT_ITEM =
+        "INSERT OR IGNORE INTO player_inventory(user_id, item_id) VALUES(?, ?)";
+    private static final String DELETE_ITEMS = "DELETE FROM player_inventory WHERE user_id = ?";
+    static final String INSERT_USER_WITH_ID =
+        "INSERT OR IGNORE INTO users(user_id, username, password_hash) VALUES(?, ?, ?)";
+
+    private final ConnectionPool pool;
+    private final SaveQueue saves;
+    private final SaveHistory history;
+    private final PasswordHasher hasher = new PasswordHasher();
+    private final PlayerStateCache stateCache = new PlayerStateCache(STATE_CACHE_SIZE);
 
     public DatabaseManager() {
-        try {
-            conn = DriverManager.getConnection(DB_URL);
-            createTables();
-        } catch (SQLException e) {
-            System.out.println("Error connecting to database: " + e.getMessage());
-        }
+        this(DB_URL, POOL_SIZE);
+    }
+
+    // One database file; ShardedStateStore opens one of these per shard
+    public DatabaseManager(String url, int poolSize) {
+        pool = new ConnectionPool(url, poolSize, CHECKOUT_TIMEOUT_MS);
+        history = new SaveHistory(pool);
+        createTables();
+        saves = new SaveQueue(this::writeStates, SAVE_FLUSH_MS);
+    }
+
+    // Pool metrics (connections, waits, statement cache hits)
+    public ConnectionPool getPool() { return pool; }
+
+    // Password hashing cost (count, average time)
+    public PasswordHasher getHasher() { return hasher; }
+
+    // Player state cache stats (hits, misses, evictions)
+    public PlayerStateCache getStateCache() { return stateCache; }
+
+    // Blocks until every save queued so far is on disk
+    @Override
+    public void flushSaves() {
+        saves.flush();
+    }
+
+    // Failed batches go back on the queue, so anything still there isn't on disk
+    @Override
+    public boolean hasPendingSave(int userId) {
+        return saves.peek(userId) != null;
+    }
+
+    @Override
+    public void close() {
+        saves.close();
+        pool.close();
     }
 
     //defines tables
@@ -41,24 +123,90 @@ public class DatabaseManager {
                 current_room TEXT NOT NULL,
                 inventory TEXT,
                 attribute TEXT NOT NULL,
+                state_blob BLOB,
                 FOREIGN KEY(user_id) REFERENCES users(user_id)
             );
             """;
 
-        try (Statement stmt = conn.createStatement()) {
+        String createInventory = """
+            CREATE TABLE IF NOT EXISTS player_inventory (
+                user_id INTEGER NOT NULL,
+                item_id TEXT NOT NULL,
+                PRIMARY KEY(user_id, item_id),
+                FOREIGN KEY(user_id) REFERENCES users(user_id)
+            );
+            """;
+
+        try (ConnectionPool.Lease lease = pool.borrow();
+             Statement stmt = lease.connection().createStatement()) {
+            stmt.execute("PRAGMA journal_mode = WAL"); // readers don't block the writer
             stmt.execute(createUsers);
             stmt.execute(createState);
+            addColumnIfMissing(stmt, "player_state", "state_blob", "BLOB");
+            stmt.execute(createInventory);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_inventory_item ON player_inventory(item_id)");
+            SaveHistory.createTable(stmt);
+            migrateInventoryCsv(lease);
         } catch (SQLException e) {
             System.out.println("Error creating tables: " + e.getMessage());
         }
     }
 
+    //adds a column to a table created by an older version
+    static void addColumnIfMissing(Statement stmt, String table, String column, String type)
+            throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return;
+            }
+        }
+        stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+    }
+
+    //moves any old comma-separated inventories into player_inventory rows
+    private void migrateInventoryCsv(ConnectionPool.Lease lease) throws SQLException {
+        Connection conn = lease.connection();
+        conn.setAutoCommit(false);
+        try (Statement select = conn.createStatement();
+             ResultSet rs = select.executeQuery(
+                 "SELECT user_id, inventory FROM player_state WHERE inventory IS NOT NULL AND inventory <> ''")) {
+            PreparedStatement insert = lease.prepare(INSERT_ITEM);
+            int migrated = 0;
+            while (rs.next()) {
+                int userId = rs.getInt("user_id");
+                for (String item : rs.getString("inventory").split(",")) {
+                    if (item.isBlank()) continue;
+                    insert.setInt(1, userId);
+                    insert.setString(2, item.trim()); // CSV was written from the already-capitalized inventory
+                    insert.addBatch();
+                }
+                migrated++;
+            }
+            if (migrated > 0) {
+                insert.executeBatch();
+                try (Statement clear = conn.createStatement()) {
+                    clear.executeUpdate("UPDATE player_state SET inventory = NULL WHERE inventory IS NOT NULL");
+                }
+                System.out.println("Migrated " + migrated + " saved inventories to player_inventory.");
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
     //register new user
+    @Override
     public int registerUser(String username, String plainPassword) {
         String sql = "INSERT INTO users(username, password_hash) VALUES(?, ?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        String passwordHash = hasher.hash(plainPassword); // slow; done before taking a connection
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement ps = lease.prepare(sql, Statement.RETURN_GENERATED_KEYS);
             ps.setString(1, username);
-            ps.setString(2, hashPassword(plainPassword));
+            ps.setString(2, passwordHash);
             int affected = ps.executeUpdate();
             if (affected == 0) {
                 return -1;
@@ -75,112 +223,268 @@ public class DatabaseManager {
         return -1;
     }
 
+    //stores a user whose ID was allocated elsewhere (the shard directory); false if taken
+    boolean insertUser(int userId, String username, String passwordHash) {
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement ps = lease.prepare(INSERT_USER_WITH_ID);
+            ps.setInt(1, userId);
+            ps.setString(2, username);
+            ps.setString(3, passwordHash);
+            return ps.executeUpdate() == 1;
+        } catch (SQLException e) {
+            System.out.println("Registration error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    //true if the user has an account on this database
+    boolean hasUser(int userId) throws SQLException {
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement ps = lease.prepare("SELECT 1 FROM users WHERE user_id = ?");
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
    //authenticates existing user
+    @Override
     public int authenticateUser(String username, String plainPassword) {
         String sql = "SELECT user_id, password_hash FROM users WHERE username = ?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        int userId;
+        String storedHash;
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement ps = lease.prepare(sql);
             ps.setString(1, username);
             try (ResultSet rs = ps.executeQuery()) {
                 if (!rs.next()) {
                     return -1; // username not found
                 }
-                String storedHash = rs.getString("password_hash");
-                String providedHash = hashPassword(plainPassword);
-                if (storedHash.equals(providedHash)) {
-                    return rs.getInt("user_id");
-                }
+                userId = rs.getInt("user_id");
+                storedHash = rs.getString("password_hash");
             }
         } catch (SQLException e) {
             System.out.println("Authentication error: " + e.getMessage());
+            return -1;
         }
-        return -1;
-    }
 
-    //saves current state of player
-    public void savePlayerState(Player player) {
-        if (conn == null) return;
-
-        String inventoryCsv = String.join(",", player.getInventory());
+        // Hashing is slow, so it runs without holding a pooled connection
+        if (!hasher.verify(plainPassword, storedHash)) {
+            return -1;
+        }
+        if (hasher.needsUpgrade(storedHash)) {
+            upgradePasswordHash(userId, hasher.hash(plainPassword));
+        }
+        return userId;
+    }
 
-        // First attempt to update an existing row
-        String update = """
-            UPDATE player_state
-            SET current_room = ?, inventory = ?, attribute = ?
-            WHERE user_id = ?;
-            """;
+    //re-stores a legacy or weaker hash in the current format
+    private void upgradePasswordHash(int userId, String passwordHash) {
+        String sql = "UPDATE users SET password_hash = ? WHERE user_id = ?";
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement ps = lease.prepare(sql);
+            ps.setString(1, passwordHash);
+            ps.setInt(2, userId);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            System.out.println("Error upgrading password hash: " + e.getMessage());
+        }
+    }
 
-        // Insert if no row exists
-        String insert = """
-            INSERT INTO player_state(user_id, current_room, inventory, attribute)
-            VALUES(?, ?, ?, ?);
-            """;
+    //queues the current state of player for the background writer
+    @Override
+    public void savePlayerState(Player player) {
+        long version = player.getVersion();
+        PlayerState state = PlayerState.of(player);
+        state.addedItems.addAll(player.takeUnsavedItems());
+        state.inventoryReplaced = player.takeInventoryReplaced();
+        stateCache.put(state);   // cache first so no reader can see an older state
+        saves.enqueue(state);
+        player.markSaved(version);
+    }
 
-        try (PreparedStatement psUpdate = conn.prepareStatement(update)) {
-            psUpdate.setString(1, player.getCurrentRoom());
-            psUpdate.setString(2, inventoryCsv);
-            psUpdate.setString(3, player.getAttributeChoice());
-            psUpdate.setInt(4, player.getUserId());
+    //writes a batch of saves as one transaction (called by SaveQueue)
+    private void writeStates(List<PlayerState> batch) throws SQLException {
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            Connection conn = lease.connection();
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement ps = lease.prepare(UPSERT_STATE);
+                PreparedStatement items = lease.prepare(INSERT_ITEM);
+                PreparedStatement deletes = lease.prepare(DELETE_ITEMS);
+                boolean anyItems = false;
+                boolean anyDeletes = false;
+                for (PlayerState state : batch) {
+                    byte[] blob = SaveCodec.encode(state);
+                    ps.setInt(1, state.userId);
+                    // With a blob the text columns are left empty; they only hold states the codec can't
+                    ps.setString(2, blob == null ? state.currentRoom : "");
+                    ps.setString(3, blob == null ? state.attribute : "");
+                    ps.setBytes(4, blob);
+                    ps.addBatch();
 
-            int affected = psUpdate.executeUpdate();
-            if (affected == 0) {
-                try (PreparedStatement psInsert = conn.prepareStatement(insert)) {
-                    psInsert.setInt(1, player.getUserId());
-                    psInsert.setString(2, player.getCurrentRoom());
-                    psInsert.setString(3, inventoryCsv);
-                    psInsert.setString(4, player.getAttributeChoice());
-                    psInsert.executeUpdate();
+                    // Only the items added since the last save are written, unless a
+                    // restore may have removed some: then the rows are rebuilt
+                    if (state.inventoryReplaced) {
+                        deletes.setInt(1, state.userId);
+                        deletes.addBatch();
+                        anyDeletes = true;
+                    }
+                    for (String item : state.inventoryReplaced ? state.inventory : state.addedItems) {
+                        items.setInt(1, state.userId);
+                        items.setString(2, item);
+                        items.addBatch();
+                        anyItems = true;
+                    }
+                }
+                ps.executeBatch();
+                if (anyDeletes) {
+                    deletes.executeBatch();
+                }
+                if (anyItems) {
+                    items.executeBatch();
                 }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();   // setAutoCommit(true) below would otherwise commit half a batch
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
-        } catch (SQLException e) {
-            System.out.println("Error saving player state: " + e.getMessage());
         }
     }
 
+    @Override
+    public boolean supportsSlots() { return true; }
+
+    @Override
+    public long saveToSlot(Player player, String slot) {
+        savePlayerState(player);
+        return history.save(PlayerState.of(player), slot);
+    }
+
+    @Override
+    public PlayerState loadFromSlot(int userId, String slot, long version) {
+        return history.load(userId, slot, version);
+    }
+
+    @Override
+    public List<SaveHistory.Entry> listSlots(int userId) {
+        return history.list(userId);
+    }
+
     //loads saved state if it exists with username
+    @Override
     public PlayerState loadPlayerState(int userId) {
-        String sql = "SELECT current_room, inventory, attribute FROM player_state WHERE user_id = ?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        // A save that hasn't reached the database yet is the newest state
+        PlayerState queued = saves.peek(userId);
+        if (queued != null) {
+            return queued;
+        }
+        PlayerState cached = stateCache.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+
+        String sql = "SELECT current_room, inventory, attribute, state_blob FROM player_state WHERE user_id = ?";
+        String itemsSql = "SELECT item_id FROM player_inventory WHERE user_id = ?";
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement ps = lease.prepare(sql);
             ps.setInt(1, userId);
+            PlayerState state = new PlayerState();
+            state.userId = userId;
+            String legacyCsv;
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    PlayerState state = new PlayerState();
-                    state.currentRoom = rs.getString("current_room");
-                    state.inventoryCsv = rs.getString("inventory");
-                    state.attribute = rs.getString("attribute");
+                if (!rs.next()) {
+                    return null;
+                }
+                byte[] blob = rs.getBytes("state_blob");
+                if (blob != null) {
+                    // Current format: everything is in the blob
+                    SaveCodec.decode(blob, state);
+                    stateCache.putIfAbsent(state);
                     return state;
                 }
+                state.currentRoom = rs.getString("current_room");
+                state.attribute = rs.getString("attribute");
+                legacyCsv = rs.getString("inventory");
+            }
+
+            // Text-column row: inventory comes from player_inventory (or an unmigrated CSV)
+            PreparedStatement items = lease.prepare(itemsSql);
+            items.setInt(1, userId);
+            try (ResultSet rs = items.executeQuery()) {
+                while (rs.next()) {
+                    state.inventory.add(rs.getString("item_id"));
+                }
             }
+            if (legacyCsv != null && !legacyCsv.isBlank()) {
+                for (String item : legacyCsv.split(",")) {           // not migrated yet
+                    if (!item.isBlank()) state.inventory.add(item.trim());
+                }
+            }
+            stateCache.putIfAbsent(state);
+            return state;
         } catch (SQLException e) {
             System.out.println("Error loading player state: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error decoding saved game for user " + userId + ": " + e.getMessage());
         }
         return null;
     }
 
-    //container for saved states
-    public static class PlayerState {
-        public String currentRoom;
-        public String inventoryCsv;
-        public String attribute;
-    }
-
-    //hashes password
-    private String hashPassword(String plainPassword) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(plainPassword.getBytes(StandardCharsets.UTF_8));
-            return bytesToHex(hashBytes);
-        } catch (NoSuchAlgorithmException e) {
-            // Fallback: store plaintext if hashing fails (not ideal, but avoids crashes)
-            System.out.println("Hashing algorithm not found, storing plaintext password.");
-            return plainPassword;
+    /**
+     * Visits every saved state. Pending saves are flushed first; rows in
+     * the blob format are decoded as they stream, older text rows are
+     * loaded one by one afterwards.
+     */
+    @Override
+    public void forEachPlayerState(Consumer<PlayerState> action) {
+        flushSaves();
+        String sql = "SELECT user_id, state_blob FROM player_state";
+        List<Integer> textRows = new ArrayList<>();
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            try (ResultSet rs = lease.prepare(sql).executeQuery()) {
+                while (rs.next()) {
+                    byte[] blob = rs.getBytes("state_blob");
+                    if (blob == null) {
+                        textRows.add(rs.getInt("user_id"));
+                        continue;
+                    }
+                    PlayerState state = new PlayerState();
+                    state.userId = rs.getInt("user_id");
+                    try {
+                        SaveCodec.decode(blob, state);
+                    } catch (IllegalArgumentException e) {
+                        textRows.add(state.userId);   // let loadPlayerState report it
+                        continue;
+                    }
+                    action.accept(state);
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error scanning player states: " + e.getMessage());
+            return;
+        }
+        for (int userId : textRows) {
+            PlayerState state = loadPlayerState(userId);
+            if (state != null) action.accept(state);
         }
     }
 
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
+    // Number of players who have collected an item (uses the item index)
+    public int countPlayersWithItem(String item) {
+        String sql = "SELECT COUNT(*) FROM player_inventory WHERE item_id = ?";
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement ps = lease.prepare(sql);
+            ps.setString(1, item);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            System.out.println("Error counting item holders: " + e.getMessage());
         }
-        return sb.toString();
+        return 0;
     }
 }
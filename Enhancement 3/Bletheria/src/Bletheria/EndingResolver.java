@@ -3,66 +3,77 @@ package Bletheria;
 /**
  * The EndingResolver handles different endgame outcomes
  * based on items collected and whether the player found the secret key.
+ *
+ * Which ending applies is data, not code: rules are read from the
+ * endings.rules resource (see EndingRule) and compiled into an
+ * EndingTable. Resolving an ending builds the player's item mask once and
+ * checks only the rules for their room and attribute, in file order; the
+ * first match wins. The ending prose itself comes from NarrativeText.
  */
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
 public class EndingResolver {
-    public String getEndingText(Player p) {
-        boolean hasKey = p.hasItem("Key");
-        int totalItems = p.getInventory().size();
+    private static final String RULES_RESOURCE = "endings.rules";
 
-        // Check if player is in boss room and return appropriate ending
-        if ("Demon High Temple".equals(p.getCurrentRoom())) {
-            if (totalItems >= 6 && hasKey) {
-                return secretEnding();
-            } else if (totalItems >= 6) {
-                return goodEnding();
-            } else {
-                return badEnding();
-            }
-        }
-        return "";
+    // Used only if endings.rules is missing from the classpath
+    private static final String DEFAULT_RULES = """
+        secret | Demon High Temple | * | Key | 6
+        good   | Demon High Temple | * |     | 6
+        bad    | Demon High Temple | * |     | 0
+        """;
+
+    private final EndingTable table;
+    private final NarrativeText narrative;
+
+    public EndingResolver() {
+        this(loadRules(), NarrativeText.getDefault());
     }
 
-    // Secret "evil" ending text
-    private String secretEnding() {
-        return """
-        CONGRATULATIONS!! You have vanquished the evil wizard!\n 
-        \nI see that you have the secret key to unlock High Demon Wisdom, please enter the well 
-        of wisdom. 
-        \nAs you enter the well everything around you fades to black and suddenly you are floating in what seems like 
-        space surrounded by stars and galaxies.  
-        \nIn front of you floats a vial.  
-        A disembodied voice whispers for you to drink it.  
-        \nYou don’t know what compels you to, but without thinking you lurch forward, grab the vial, 
-        and drink it in its entirety.  
-        You feel a power surge through you as well as an anger you have never felt before.\n  
-        Darkness spreads from your fingertips to your elbows.  
-        Unholy sigils are seared into your flesh.  
-        The disembodied voice starts laughing and Nozgorath appears in ghostly form.\n  
-        He laughs and welcomes you to your new reign as ruler of the Realm of Misfortune.  
-        Your soul belongs to the well of wisdom now, however, your power knows no bounds and 
-        you are granted immortality.
-        You should be upset, but an evil smile spreads across your face.  
-        You take your seat on the throne of misfortune in the High Demon Temple.
-        \nALL HAIL THE NEW RULER OF THE REALM!!! \nALL HAIL THE DECREPIT ONE!\n
-            (Type 'exit' to end game.)
-        """;
+    public EndingResolver(List<EndingRule> rules, NarrativeText narrative) {
+        this.table = new EndingTable(rules);
+        this.narrative = narrative;
     }
 
-    // Standard good ending text
-    private String goodEnding() {
-        return """
-You have vanquished Nozgorath and avenged your master!
-You leave the Realm of Misfortune with your new title as the Demon Slayer Mage.
-(Type 'exit' to end game.)
-        """;
+    // Id of the ending the player has reached (e.g. "good"), or null
+    public String getEndingId(Player p) {
+        return getEndingId(p.getCurrentRoom(), p.getAttributeChoice(), p.getInventory());
     }
 
-    // Bad ending text if underprepared
-    private String badEnding() {
-        return """
-As you enter the temple, Nozgorath laughs as he sees your unprepared state.
-the Demon Lord looks at you with his blackened eyes and you spontaneously combust,.
-(Type 'exit' to end game.)
-        """;
+    public String getEndingId(String room, String attribute, Set<String> inventory) {
+        return table.resolve(room, attribute, inventory);
+    }
+
+    public String getEndingText(Player p) {
+        String endingId = getEndingId(p);
+        if (endingId == null) {
+            return "";
+        }
+        // Prose lives in narrative/<locale>/ending.<id>.txt
+        return narrative.get("ending." + endingId);
+    }
+
+    //reads endings.rules, falling back to the built-in rules
+    private static List<EndingRule> loadRules() {
+        InputStream in = EndingResolver.class.getResourceAsStream(RULES_RESOURCE);
+        if (in != null) {
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                return EndingRule.parse(reader);
+            } catch (IOException e) {
+                System.out.println("Error loading ending rules, using defaults: " + e.getMessage());
+            }
+        }
+        try {
+            return EndingRule.parse(new StringReader(DEFAULT_RULES));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
-}
+}
\ No newline at end of file
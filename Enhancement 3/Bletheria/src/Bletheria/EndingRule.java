@@ -0,0 +1,79 @@
+package Bletheria;
+
+/**
+ * EndingRule is one data-driven ending: "in this room, with this attribute,
+ * holding these items and at least this many items in total, the player
+ * gets this ending". Rules are checked in file order and the first match
+ * wins, so more specific endings go first.
+ *
+ * Rules are written one per line as
+ *     ending | room | attribute | required items | min items
+ * where attribute may be '*' for any, required items is a comma-separated
+ * list (may be empty) and blank lines or lines starting with '#' are ignored.
+ */
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class EndingRule {
+    public static final String ANY = "*";
+
+    private final String endingId;
+    private final String room;
+    private final String attribute;          // ANY or an attribute choice
+    private final Set<String> requiredItems; // capitalized like Player's inventory
+    private final int minItems;
+
+    public EndingRule(String endingId, String room, String attribute, Set<String> requiredItems, int minItems) {
+        this.endingId = endingId;
+        this.room = room;
+        this.attribute = attribute;
+        this.requiredItems = requiredItems;
+        this.minItems = minItems;
+    }
+
+    public String getEndingId() { return endingId; }
+    public String getRoom() { return room; }
+    public String getAttribute() { return attribute; }
+    public Set<String> getRequiredItems() { return requiredItems; }
+    public int getMinItems() { return minItems; }
+
+    //reads rules from the text format described above
+    public static List<EndingRule> parse(Reader source) throws IOException {
+        List<EndingRule> rules = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] cols = line.split("\\|", -1);
+            if (cols.length != 5) {
+                throw new IOException("Bad ending rule on line " + lineNo + ": " + line);
+            }
+            Set<String> items = new LinkedHashSet<>();
+            for (String item : cols[3].split(",")) {
+                if (!item.isBlank()) items.add(capitalize(item.trim()));
+            }
+            int minItems;
+            try {
+                minItems = cols[4].isBlank() ? 0 : Integer.parseInt(cols[4].trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad ending rule on line " + lineNo + ": " + line);
+            }
+            String attribute = cols[2].trim().isEmpty() ? ANY : cols[2].trim();
+            rules.add(new EndingRule(cols[0].trim(), cols[1].trim(), attribute, items, minItems));
+        }
+        return rules;
+    }
+
+    private static String capitalize(String s) {
+        return s.substring(0, 1).toUpperCase() + s.substring(1).toLowerCase();
+    }
+}
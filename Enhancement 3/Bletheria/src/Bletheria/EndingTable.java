@@ -0,0 +1,125 @@
+package Bletheria;
+
+/**
+ * EndingTable is the compiled form of a list of EndingRules.
+ *
+ * At load time the rules are indexed by (room, attribute): each pair gets
+ * the rules that can apply there, still in file order. Every item some
+ * rule names gets a bit, and each rule keeps its required items as a bit
+ * mask. Resolving an ending builds the player's mask once and walks only
+ * the candidate rules for their room and attribute, so a rule check is a
+ * few word-wide ANDs however many items the rules mention.
+ *
+ * Items no rule names get no bit, so the masks only grow with the items
+ * the rules actually use, even with hundreds of items in the world.
+ */
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class EndingTable {
+    private static final int[] NO_RULES = new int[0];
+
+    private final Map<String, Integer> roomIds = new HashMap<>();
+    private final Map<String, Integer> attributeIds = new HashMap<>(); // 0 = any other attribute
+    private final Map<String, Integer> itemBits = new HashMap<>();
+    private final int attributeCount;
+    private final int maskWords;
+    private final String[] endingIds;      // per rule
+    private final int[] minItems;          // per rule
+    private final long[][] requiredMasks;  // per rule
+    private final int[][] candidates;      // per (room, attribute): rule indexes in file order
+
+    public EndingTable(List<EndingRule> rules) {
+        for (EndingRule rule : rules) {
+            roomIds.putIfAbsent(rule.getRoom(), roomIds.size());
+            if (!EndingRule.ANY.equals(rule.getAttribute())) {
+                attributeIds.putIfAbsent(rule.getAttribute(), attributeIds.size() + 1);
+            }
+            for (String item : rule.getRequiredItems()) {
+                itemBits.putIfAbsent(item, itemBits.size());
+            }
+        }
+        attributeCount = attributeIds.size() + 1;
+        maskWords = (itemBits.size() + 63) / 64;
+
+        int n = rules.size();
+        endingIds = new String[n];
+        minItems = new int[n];
+        requiredMasks = new long[n][];
+        for (int i = 0; i < n; i++) {
+            EndingRule rule = rules.get(i);
+            endingIds[i] = rule.getEndingId();
+            minItems[i] = rule.getMinItems();
+            requiredMasks[i] = mask(rule.getRequiredItems());
+        }
+        candidates = compile(rules);
+    }
+
+    /**
+     * Looks up the ending for a player's situation.
+     * @return the ending id, or null if no rule matches
+     */
+    public String resolve(String room, String attribute, Set<String> inventory) {
+        Integer roomId = roomIds.get(room);
+        if (roomId == null) {
+            return null;
+        }
+        int attr = attributeIds.getOrDefault(attribute, 0);
+        int[] rules = candidates[roomId * attributeCount + attr];
+        if (rules.length == 0) {
+            return null;
+        }
+        long[] held = mask(inventory);
+        for (int rule : rules) {
+            if (inventory.size() >= minItems[rule] && holdsAll(held, requiredMasks[rule])) {
+                return endingIds[rule];
+            }
+        }
+        return null;
+    }
+
+    //lists, for every (room, attribute), the rules that can apply there
+    private int[][] compile(List<EndingRule> rules) {
+        List<List<Integer>> lists = new ArrayList<>();
+        for (int i = 0; i < roomIds.size() * attributeCount; i++) {
+            lists.add(new ArrayList<>());
+        }
+        for (int i = 0; i < rules.size(); i++) {
+            EndingRule rule = rules.get(i);
+            int roomId = roomIds.get(rule.getRoom());
+            if (EndingRule.ANY.equals(rule.getAttribute())) {
+                for (int attr = 0; attr < attributeCount; attr++) {
+                    lists.get(roomId * attributeCount + attr).add(i);
+                }
+            } else {
+                lists.get(roomId * attributeCount + attributeIds.get(rule.getAttribute())).add(i);
+            }
+        }
+        int[][] compiled = new int[lists.size()][];
+        for (int i = 0; i < compiled.length; i++) {
+            List<Integer> list = lists.get(i);
+            compiled[i] = list.isEmpty() ? NO_RULES : list.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return compiled;
+    }
+
+    //bit mask of the rule items in a set; other items are ignored
+    private long[] mask(Set<String> items) {
+        long[] mask = new long[maskWords];
+        for (String item : items) {
+            Integer bit = itemBits.get(item);
+            if (bit != null) mask[bit >>> 6] |= 1L << bit;
+        }
+        return mask;
+    }
+
+    private static boolean holdsAll(long[] held, long[] required) {
+        for (int w = 0; w < required.length; w++) {
+            if ((required[w] & ~held[w]) != 0) return false;
+        }
+        return true;
+    }
+}
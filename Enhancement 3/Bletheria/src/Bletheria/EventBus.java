@@ -0,0 +1,31 @@
+package Bletheria;
+
+/**
+ * EventBus delivers GameEvents to subscribers registered by event type.
+ *
+ * Each session has its own bus and it is only used from the session's
+ * thread, so delivery is synchronous and needs no locking.
+ */
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public class EventBus {
+    private final Map<Class<?>, List<Consumer<GameEvent>>> subscribers = new HashMap<>();
+
+    // Registers a handler for one event type
+    public <T extends GameEvent> void subscribe(Class<T> type, Consumer<? super T> handler) {
+        subscribers.computeIfAbsent(type, k -> new ArrayList<>())
+                   .add(event -> handler.accept(type.cast(event)));
+    }
+
+    public void publish(GameEvent event) {
+        List<Consumer<GameEvent>> handlers = subscribers.get(event.getClass());
+        if (handlers == null) return;
+        for (Consumer<GameEvent> handler : handlers) {
+            handler.accept(event);
+        }
+    }
+}
@@ -8,86 +8,201 @@ package Bletheria;
  * and a 'rooms' command to list all available room names.
  * 
  * Enhancement 3: integrates DataBaseManager for logging in and save/load, 
- * and adds "save" command to persist the player's state
+ * and adds "save" command to persist the player's state. Storage is used
+ * through the StateStore interface, so any backend can be plugged in.
+ *
+ * Multiplayer: when attached to a RoomBroadcaster, travel announces
+ * arrivals/departures and 'say' speaks to everyone in the same room.
+ *
+ * The engine reacts to the player's GameEvents rather than polling every
+ * turn: the current room and ending text are only recomputed when the
+ * player enters a room or picks up an item, and an EndingReached event is
+ * published when an ending is first reached.
+ *
+ * Progress is checkpointed by an AutosavePolicy at the end of a command
+ * line (after an item, every N commands or T milliseconds) and when the
+ * player exits. Checkpoints skip the write when nothing has changed.
  */
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.List;
+import java.util.Map;
 
 public class GameEngine {
+    // Failed login/registration attempts allowed before the intro gives up
+    private static final int MAX_LOGIN_ATTEMPTS = 5;
+
     private final Scanner scanner;
     private final WorldMap world;
     private final Player player;
     private final EndingResolver endings;
-    private final DatabaseManager db;
+    private final StateStore db;
     private String lastMessage = "";
-
-    public GameEngine(Scanner scanner, WorldMap world, Player player, EndingResolver endings, DatabaseManager db) {
+    private String pendingNotices = "";   // timed events waiting for the next view
+    private RoomBroadcaster rooms;        // null in single-player (console) games
+    private RoomInbox inbox;
+    private final EventBus events = new EventBus();
+    private Room currentRoom;             // kept current by RoomEntered events
+    private String endingText = "";       // kept current by room/item events
+    private final AutosavePolicy autosave = AutosavePolicy.getDefault();
+    private int commandsSinceSave = 0;
+    private long lastSaveMillis = System.currentTimeMillis();
+    private boolean itemSinceSave = false;
+
+    public GameEngine(Scanner scanner, WorldMap world, Player player, EndingResolver endings, StateStore db) {
         this.scanner = scanner;
         this.world = world;
         this.player = player;
         this.endings = endings;
         this.db = db;
+
+        events.subscribe(GameEvent.RoomEntered.class, this::onRoomEntered);
+        events.subscribe(GameEvent.ItemAcquired.class, e -> resolveEnding());
+        events.subscribe(GameEvent.ItemAcquired.class, e -> itemSinceSave = true);
+        player.setEventBus(events);
+        currentRoom = world.getRoom(player.getCurrentRoom());
+        resolveEnding();
+    }
+
+    // Engine driven through GameSession rather than a console Scanner
+    public GameEngine(WorldMap world, Player player, EndingResolver endings, StateStore db) {
+        this(null, world, player, endings, db);
+    }
+
+    /**
+     * Rebuilds a Player from a saved state, locking the secret area in the
+     * given world if the saved attribute is Wisdom (same as a new game).
+     */
+    public static Player restorePlayer(String username, int userId, PlayerState saved,
+                                       WorldMap world) {
+        if ("Wisdom".equals(saved.attribute)) {
+            world.lockSecretEnding();
+        }
+        Player restored = new Player(username, saved.attribute, saved.currentRoom, userId);
+        restored.loadInventory(saved.inventory);
+        restored.markSaved(restored.getVersion());   // matches the save, nothing to write yet
+        return restored;
     }
 
-    //Handles the introduction and player setup before the game begins.
-    public static Player runIntroSetup(Scanner scanner, WorldMap world, DatabaseManager db) {
+    /**
+     * Handles the introduction and player setup before the game begins.
+     * Logins go through the given admission gate so a reconnect storm
+     * can't overload the database, and password hashing runs on the
+     * AuthService's bounded pool. Both should be shared by every login
+     * (see Bletheria.main), or the bounds don't bound anything.
+     * Returns null if the player runs out of login attempts. Only wrong
+     * passwords and failed registrations count as attempts; being turned
+     * away because the realm is busy does not.
+     *
+     * A player who pastes a valid session token skips the password (and
+     * the admission gate, since nothing is hashed); every password login
+     * is given a new token, unless tokens can't outlive this process (see
+     * SessionTokens). The returned player carries its token, which 'exit'
+     * revokes.
+     */
+    public static Player runIntroSetup(Scanner scanner, WorldMap world, StateStore db,
+                                       LoginAdmission admission, AuthService auth) {
+        SessionTokens tokens = SessionTokens.getDefault();
         System.out.println("Welcome to Bletheria!");
-        System.out.println("""
-Your master was murdered by the High Demon Wizard Nozgorath the Decrepit.  
-You must make your way through the lower demon city of Black Bletheria in The Realm of Misfortune, 
-to the Demon's high temple to take your revenge, avenge your master, and try not to let 
-the darkness consume you along the way.\n\n
-In order to exact your revenge, you must collect the following:
-    - The Rare Charred Demon Wand to vanquish Nozgorath, 
-    - The Invisibility Cloak to hide your intentions, 
-    - The Dark Potion of Bravery to steady your nerves, 
-    - The Spellbook of the Dead and Withered to bolster your magic prowess, 
-    - The Demon Grieves of Wiwaria Common to protect your soul, 
-    - The Mask of Intuition to increase your perception, 
-    - Finally, if you are high in luck, the Secret Key to unlock High Demon Wisdom
-""");
+        // Intro prose is streamed from narrative/<locale>/intro.txt
+        try {
+            NarrativeText.getDefault().streamTo("intro", System.out);
+        } catch (IOException e) {
+            System.out.println("Error showing intro: " + e.getMessage());
+        }
+        System.out.println();
 
         //login/registration//
-        System.out.print("Have you previously explored the Realm of Misfortune? (yes/no): ");
-        String hasAccount = scanner.nextLine().trim().toLowerCase();
+        System.out.print("Have you previously explored the Realm of Misfortune? (yes/no"
+                         + (tokens.survivesRestart() ? ", or paste your session token" : "") + "): ");
+        String hasAccount = scanner.nextLine().trim();
 
         int userId = -1;
         String username = null;
+        int attempts = 0;
+
+        // A session token from an earlier login skips the password
+        String token = null;
+        if (hasAccount.indexOf('.') > 0) {
+            SessionTokens.Claims claims = tokens.verify(hasAccount);
+            if (claims != null) {
+                userId = claims.userId();
+                username = claims.username();
+                token = hasAccount;
+            } else {
+                System.out.println("That session token has expired or is invalid. Please log in.");
+                hasAccount = "yes";
+            }
+        }
+        hasAccount = hasAccount.toLowerCase();
 
         while (userId == -1) {
+            if (attempts >= MAX_LOGIN_ATTEMPTS) {
+                System.out.println("Too many failed attempts. Please come back later.");
+                return null;
+            }
+
             System.out.print("Enter your name: ");
             username = scanner.nextLine().trim();
 
             System.out.print("Enter password: ");
             String password = scanner.nextLine().trim();
 
-            if (hasAccount.startsWith("y")) {
-                userId = db.authenticateUser(username, password);
-                if (userId == -1) {
-                    System.out.println("Login failed. Please try again.");
+            // Fast rejection when too many logins are already in flight
+            if (!admission.tryEnter()) {
+                System.out.println("The realm is busy right now. Please try again in a moment.");
+                continue;
+            }
+            try {
+                if (hasAccount.startsWith("y")) {
+                    userId = auth.authenticate(username, password).join();
+                    if (userId == -1) {
+                        attempts++;
+                        System.out.println("Login failed. Please try again.");
+                    }
+                } else {
+                    userId = auth.register(username, password).join();
+                    if (userId == -1) {
+                        attempts++;
+                        System.out.println("Registration failed (uname may already exist). Try again.");
+                    } else {
+                        System.out.println("Account created successfully!");
+                    }
                 }
-            } else {
-                userId = db.registerUser(username, password);
-                if (userId == -1) {
-                    System.out.println("Registration failed (uname may already exist). Try again.");
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RejectedExecutionException) {
+                    // hashing pool queue is full
+                    System.out.println("The realm is busy right now. Please try again in a moment.");
                 } else {
-                    System.out.println("Account created successfully!");
+                    attempts++;
+                    System.out.println("Error logging in: " + e.getCause());
                 }
+            } finally {
+                admission.leave();
             }
         }
 
+        if (token == null && tokens.survivesRestart()) {
+            token = tokens.issue(userId, username);
+            System.out.println("Your session token (paste it next time to skip the password): " + token);
+        }
         clear();
 
         //check for saved data
-        DatabaseManager.PlayerState saved = db.loadPlayerState(userId);
+        PlayerState saved = db.loadPlayerState(userId);
         if (saved != null) {
             System.out.println("A saved game was found for user '" + username + "'.");
             System.out.print("Would you like to load it? (yes/no): ");
             String loadAns = scanner.nextLine().trim().toLowerCase();
 
             if (loadAns.startsWith("y")) {
-                Player loadedPlayer = new Player(username, saved.attribute, saved.currentRoom, userId);
-                loadedPlayer.loadInventoryFromCsv(saved.inventoryCsv);
+                Player loadedPlayer = restorePlayer(username, userId, saved, world);
+                loadedPlayer.setSessionToken(token);
                 clear();
                 System.out.println("Welcome back, " + loadedPlayer.getName() + " the lowly!");
                 return loadedPlayer;
@@ -101,7 +216,11 @@ To move: use 'travel north/south/east/west'.
 To collect an item: use 'equip <item>'.
 To see all room names: use 'rooms'.
 To get help finding a room: use 'hint <room name>'.
-To save your progress: use 'save'.
+To talk to others in the same room: use 'say <message>'.
+To save your progress: use 'save', or 'save <slot>' to keep a named checkpoint.
+To go back to a checkpoint: use 'history' and 'restore <slot> [version]'.
+To see how the rest of the realm is faring: use 'stats'.
+To chain commands in one turn: separate them with ';'.
 """);
 
         System.out.print("Will you buff Wisdom or Perception? ");
@@ -116,6 +235,7 @@ To save your progress: use 'save'.
         }
 
         Player newPlayer = new Player(username, attribute, "Ashen Foyer", userId);
+        newPlayer.setSessionToken(token);
         // Save initial state
         db.savePlayerState(newPlayer);
         clear();
@@ -125,84 +245,275 @@ To save your progress: use 'save'.
     //Primary gameplay loop. Runs until the user types "exit".
     public void run() {
         while (true) {
-            printHud();
-            Room room = world.getRoom(player.getCurrentRoom());
-
-            if (room == null) {
+            if (currentRoom == null) {
                 System.out.println("You are lost between realms… exiting.");
                 break;
             }
+            System.out.print(render());
 
-            // Display any visible item
-            if (room.getItem() != null && !player.hasItem(room.getItem())) {
-                System.out.println("You see the " + room.getItem() + " on a pedestal.\n");
+            System.out.print("Enter your move: ");
+            if (!scanner.hasNextLine()) {
+                disconnect();               // input closed without 'exit'
+                return;
             }
+            String input = scanner.nextLine();
+            clear();
 
-            // If in the boss room, show ending text
-            if (room.getBossName() != null) {
-                System.out.println(endings.getEndingText(player));
+            if (!handleCommand(input)) {
+                return;
             }
+        }
+    }
 
-            System.out.print("Enter your move: ");
-            String input = scanner.nextLine();
-            clear();
+    /**
+     * Executes a command line against this engine's player. Shared by the
+     * console loop and by GameSession, so every front end goes through the
+     * same command handling.
+     *
+     * A line may hold several commands separated by ';'
+     * (e.g. "travel north; travel east; equip cloak"). They run in order
+     * as one turn: the batch stops at the first command that fails or once
+     * the player reaches a boss room, any 'save' in it is coalesced into a
+     * single write at the end, and the caller renders the HUD once.
+     *
+     * Without an explicit 'save', the AutosavePolicy may checkpoint the
+     * player once the line has run, and always does on 'exit'.
+     *
+     * @return false once the player has asked to exit
+     */
+    public boolean handleCommand(String input) {
+        String[] commands = input == null ? new String[] { "" } : input.split(";");
+        StringBuilder messages = new StringBuilder();
+        boolean saveRequested = false;
+        boolean keepRunning = true;
+
+        for (int i = 0; i < commands.length; i++) {
+            CommandResult result = execute(commands[i]);
+            commandsSinceSave++;
+            if (result == CommandResult.SAVE) {
+                saveRequested = true;
+            } else {
+                messages.append(lastMessage);
+            }
+
+            if (result == CommandResult.EXIT) {
+                keepRunning = false;
+                break;
+            }
+            boolean more = i < commands.length - 1;
+            if (more && (result == CommandResult.FAILED || inBossRoom())) {
+                messages.append("Remaining commands skipped.\n");
+                break;
+            }
+        }
+
+        // One write for the whole batch, however many saves it contained
+        if (saveRequested) {
+            handleSave();
+            messages.append(lastMessage);
+        } else if (!keepRunning) {
+            disconnect();
+        } else if (autosave.due(commandsSinceSave, System.currentTimeMillis() - lastSaveMillis, itemSinceSave)) {
+            checkpoint();
+        }
+        if (!keepRunning) {
+            logout();
+        }
+        lastMessage = messages.toString();
+        return keepRunning;
+    }
+
+    /**
+     * Saves the player if it changed since the last save and resets the
+     * autosave counters. Returns true if anything was written.
+     */
+    public boolean checkpoint() {
+        commandsSinceSave = 0;
+        itemSinceSave = false;
+        lastSaveMillis = System.currentTimeMillis();
+        return db.checkpoint(player);
+    }
 
-            // Split command into action + argument
-            String[] parts = input.trim().split("\\s+");
-            if (parts.length == 0 || parts[0].isBlank()) {
+    // Called when the player leaves (exit, dropped connection, session closed)
+    public void disconnect() {
+        if (autosave.onDisconnect()) {
+            checkpoint();
+        }
+    }
+
+    //revokes the player's session token so it can't resume the account after 'exit'
+    private void logout() {
+        String token = player.getSessionToken();
+        if (token != null) {
+            SessionTokens.getDefault().revoke(token);
+            player.setSessionToken(null);
+        }
+    }
+
+    // Outcome of one command inside a batch
+    private enum CommandResult { OK, FAILED, SAVE, EXIT }
+
+    //runs one command; leaves its feedback in lastMessage
+    private CommandResult execute(String command) {
+        // Split command into action + argument
+        String[] parts = command.trim().split("\\s+");
+        if (parts.length == 0 || parts[0].isBlank()) {
+            lastMessage = "Invalid command.\n";
+            return CommandResult.FAILED;
+        }
+
+        String action = cap(parts[0]);
+        String argument = parts.length > 1 ? join(parts, 1) : "";
+
+        boolean ok;
+        switch (action) {
+            case "Travel" -> ok = handleTravel(argument);
+            case "Equip"  -> ok = handleEquip(argument);
+            case "Hint"   -> ok = handleHint(argument);   // BFS hint
+            case "Rooms"  -> ok = handleListRooms();      // list rooms
+            case "Say"    -> ok = handleSay(argument);    // speak to the room
+            case "Save"   -> {
+                if (argument.isBlank()) return CommandResult.SAVE; // saved once per batch
+                ok = handleSaveSlot(argument);
+            }
+            case "History" -> ok = handleHistory();
+            case "Stats"  -> ok = handleStats();      // realm-wide dashboard
+            case "Restore" -> ok = handleRestore(argument);
+            case "Exit"   -> { return CommandResult.EXIT; }
+            default       -> {
                 lastMessage = "Invalid command.\n";
-                continue;
+                ok = false;
             }
+        }
+        return ok ? CommandResult.OK : CommandResult.FAILED;
+    }
+
+    // True when the player is standing in a room with a boss
+    private boolean inBossRoom() {
+        return currentRoom != null && currentRoom.getBossName() != null;
+    }
+
+    //keeps the cached room (and room presence) in step with the player
+    private void onRoomEntered(GameEvent.RoomEntered e) {
+        currentRoom = world.getRoom(e.toRoom());
+        if (rooms != null) {
+            rooms.move(inbox, player.getName(), e.fromRoom(), e.toRoom());
+        }
+        resolveEnding();
+    }
+
+    // Re-evaluates the ending only when room or inventory changed
+    private void resolveEnding() {
+        String text = inBossRoom() ? endings.getEndingText(player) : "";
+        if (!text.isEmpty() && !text.equals(endingText)) {
+            endingText = text;
+            events.publish(new GameEvent.EndingReached(player, player.getCurrentRoom(), text));
+        }
+        endingText = text;
+    }
 
-            String action = cap(parts[0]);
-            String argument = parts.length > 1 ? join(parts, 1) : "";
-
-            switch (action) {
-                case "Travel" -> handleTravel(argument);
-                case "Equip"  -> handleEquip(argument);
-                case "Hint"   -> handleHint(argument);   // BFS hint
-                case "Rooms"  -> handleListRooms();      // list rooms
-                case "Save"   -> handleSave();           // NEW: save game
-                case "Exit"   -> { return; }
-                default       -> lastMessage = "Invalid command.\n";
+    /**
+     * Builds the HUD plus any room notices (visible item, ending text)
+     * as one string so it can go to the console or to a remote client.
+     */
+    public String render() {
+        StringBuilder sb = new StringBuilder(renderHud());
+        if (!pendingNotices.isEmpty()) {
+            sb.append(pendingNotices).append('\n');
+            pendingNotices = "";
+        }
+        if (rooms != null) {
+            String heard = inbox.drain();
+            if (!heard.isEmpty()) {
+                sb.append(heard).append('\n');
+            }
+            int others = rooms.population(player.getCurrentRoom()) - 1;
+            if (others > 0) {
+                sb.append(others).append(others == 1 ? " other adventurer is" : " other adventurers are")
+                  .append(" here.\n\n");
             }
         }
+        Room room = currentRoom;
+        if (room == null) {
+            return sb.toString();
+        }
+
+        // Display any visible item
+        if (room.getItem() != null && !player.hasItem(room.getItem())) {
+            sb.append("You see the ").append(room.getItem()).append(" on a pedestal.\n\n");
+        }
+
+        // If in the boss room, show ending text
+        if (room.getBossName() != null) {
+            sb.append(endingText).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public Player getPlayer() { return player; }
+    public WorldMap getWorld() { return world; }
+    public EventBus getEvents() { return events; }
+
+    // Joins multiplayer presence in the player's current room
+    public void attachPresence(RoomBroadcaster rooms, RoomInbox inbox) {
+        this.rooms = rooms;
+        this.inbox = inbox;
+        rooms.enter(inbox, player.getName(), player.getCurrentRoom());
+    }
+
+    // Leaves the current room's presence (on passivation or disconnect)
+    public void detachPresence() {
+        if (rooms == null) return;
+        rooms.leave(inbox, player.getName(), player.getCurrentRoom());
+        rooms = null;
+        inbox = null;
+    }
+
+    // Queues a message from a timed event (see SessionRegistry)
+    public void addNotice(String notice) {
+        pendingNotices += notice + "\n";
     }
 
     //movement between rooms.
-    private void handleTravel(String directionRaw) {
+    private boolean handleTravel(String directionRaw) {
         String direction = cap(directionRaw);
-        Room current = world.getRoom(player.getCurrentRoom());
+        Room current = currentRoom;
 
-        if (current == null) { lastMessage = "You can't go that way.\n"; return; }
+        if (current == null) { lastMessage = "You can't go that way.\n"; return false; }
 
         String next = current.getExit(direction);
-        if (next != null && world.hasRoom(next)) {
-            player.setCurrentRoom(next);
+        if (next != null && world.hasRoom(next) && !world.isLockedFor(next, player.getAttributeChoice())) {
+            player.setCurrentRoom(next); // RoomEntered updates room state and presence
             lastMessage = "You travel " + direction + "\n";
-        } else {
-            lastMessage = "You can't go that way.\n";
+            return true;
         }
+        lastMessage = "You can't go that way.\n";
+        return false;
     }
 
     //item collection.
-    private void handleEquip(String itemRaw) {
-        Room current = world.getRoom(player.getCurrentRoom());
-        if (current == null) { lastMessage = "Can't find " + itemRaw + "\n"; return; }
+    private boolean handleEquip(String itemRaw) {
+        Room current = currentRoom;
+        if (current == null) { lastMessage = "Can't find " + itemRaw + "\n"; return false; }
 
         String desired = cap(itemRaw);
         String roomItem = current.getItem() == null ? null : cap(current.getItem());
 
         if (roomItem != null && roomItem.equals(desired)) {
-            if (!player.hasItem(roomItem)) {
+            if (player.hasItem(roomItem)) {
+                lastMessage = "You already have the " + roomItem + "\n";
+            } else if (world.claimItem(current, current.getItem())) {
                 player.addItem(roomItem);
                 lastMessage = roomItem + " equipped!\n";
             } else {
-                lastMessage = "You already have the " + roomItem + "\n";
+                // Another player in a shared world got to it first
+                lastMessage = "Someone snatched the " + roomItem + " before you!\n";
+                return false;
             }
-        } else {
-            lastMessage = "Can't find " + desired + "\n";
+            return true;
         }
+        lastMessage = "Can't find " + desired + "\n";
+        return false;
     }
 
     /**
@@ -212,22 +523,22 @@ To save your progress: use 'save'.
      *
      * Command format:  hint Demon High Temple
      */
-    private void handleHint(String targetRoomRaw) {
+    private boolean handleHint(String targetRoomRaw) {
         if (targetRoomRaw == null || targetRoomRaw.isBlank()) {
             lastMessage = "Please specify a room name, e.g., 'hint Demon High Temple'.\n";
-            return;
+            return false;
         }
 
         // Normalize the room name using a case-insensitive lookup
         String resolvedRoomName = world.findRoomNameIgnoreCase(targetRoomRaw);
-        if (resolvedRoomName == null) {
+        if (resolvedRoomName == null || world.isLockedFor(resolvedRoomName, player.getAttributeChoice())) {
             lastMessage = "No such room: " + targetRoomRaw + "\n";
-            return;
+            return false;
         }
 
         if (resolvedRoomName.equals(player.getCurrentRoom())) {
             lastMessage = "You are already in " + resolvedRoomName + ".\n";
-            return;
+            return false;
         }
 
         List<String> path = world.findShortestPath(player.getCurrentRoom(), resolvedRoomName);
@@ -235,7 +546,7 @@ To save your progress: use 'save'.
         if (path.isEmpty()) {
             lastMessage = "No path found from " + player.getCurrentRoom()
                         + " to " + resolvedRoomName + ".\n";
-            return;
+            return false;
         }
    
         // Build directional instructions
@@ -258,6 +569,7 @@ To save your progress: use 'save'.
         }
 
         lastMessage = sb.toString();
+        return true;
     }
 
     /**
@@ -266,41 +578,226 @@ To save your progress: use 'save'.
      *
      * Command: rooms
      */
-    private void handleListRooms() {
+    private boolean handleListRooms() {
         StringBuilder sb = new StringBuilder();
         sb.append("Available rooms:\n");
         for (String roomName : world.getAllRoomNames()) {
+            if (world.isLockedFor(roomName, player.getAttributeChoice())) continue;
             sb.append("- ").append(roomName).append("\n");
         }
         lastMessage = sb.toString();
+        return true;
     }
     
+    /**
+     * Speaks to every other player in the current room.
+     *
+     * Command: say <message>
+     */
+    private boolean handleSay(String text) {
+        if (text.isBlank()) {
+            lastMessage = "Say what?\n";
+            return false;
+        }
+        if (rooms == null) {
+            lastMessage = "Only the echo answers you.\n";
+            return true;
+        }
+        rooms.say(inbox, player.getName(), player.getCurrentRoom(), text);
+        lastMessage = "You say: " + text + "\n";
+        return true;
+    }
+
     /**
      * Enhancement 3:
-     * Manually saves the player state to the database.
+     * Manually saves the player state to the database. The write is
+     * queued (write-behind), so this returns without waiting on disk.
      *
      * Command: save
      */
     private void handleSave() {
-        db.savePlayerState(player);
+        checkpoint();   // nothing to write if unchanged since the last save
         lastMessage = "Game saved successfully.\n";
     }
 
-    /** Prints current room, inventory, and feedback. */
-    private void printHud() {
-        System.out.println("""
+    /**
+     * Saves the game and keeps a copy in a named slot.
+     *
+     * Command: save <slot>
+     */
+    private boolean handleSaveSlot(String slotRaw) {
+        String slot = slotRaw.trim().toLowerCase();
+        if (!slotsAvailable() || !validSlot(slot)) {
+            return false;
+        }
+        long version = db.saveToSlot(player, slot);
+        if (version < 0) {
+            lastMessage = "The slot could not be saved.\n";
+            return false;
+        }
+        lastMessage = "Game saved to slot '" + slot + "' (version " + version + ").\n";
+        return true;
+    }
+
+    /**
+     * Lists the player's save slots and the versions kept in each.
+     *
+     * Command: history
+     */
+    private boolean handleHistory() {
+        if (!slotsAvailable()) {
+            return false;
+        }
+        List<SaveHistory.Entry> entries = db.listSlots(player.getUserId());
+        if (entries.isEmpty()) {
+            lastMessage = "You have no saved slots. Use 'save <slot>' to make one.\n";
+            return true;
+        }
+        StringBuilder sb = new StringBuilder("Saved slots:\n");
+        for (SaveHistory.Entry e : entries) {
+            sb.append("  ").append(e.slot()).append(" v").append(e.version())
+              .append("  ").append(e.room())
+              .append("  ").append(Instant.ofEpochMilli(e.savedAt()).truncatedTo(ChronoUnit.SECONDS))
+              .append('\n');
+        }
+        lastMessage = sb.toString();
+        return true;
+    }
+
+    /**
+     * Puts the player back to a saved slot (its latest version unless one
+     * is given) and saves that as the current game.
+     *
+     * A slot is the player's own history, but in a shared world the items
+     * are not: an item from the slot that the player doesn't hold now has
+     * to be claimed from its pedestal like 'equip', and is left out if
+     * another player has it.
+     *
+     * Command: restore <slot> [version]
+     */
+    private boolean handleRestore(String argument) {
+        String[] parts = argument.trim().toLowerCase().split("\\s+");
+        if (!slotsAvailable() || !validSlot(parts[0])) {
+            return false;
+        }
+        long version = 0;
+        if (parts.length > 1) {
+            try {
+                version = Long.parseLong(parts[1].replaceFirst("^v", ""));
+            } catch (NumberFormatException e) {
+                lastMessage = "Usage: restore <slot> [version]\n";
+                return false;
+            }
+        }
+        PlayerState saved = db.loadFromSlot(player.getUserId(), parts[0], version);
+        if (saved == null || !world.hasRoom(saved.currentRoom)) {
+            lastMessage = "No such save in slot '" + parts[0] + "'.\n";
+            return false;
+        }
+        List<String> missed = new ArrayList<>();
+        player.restoreTo(world.isShared() ? claimRestoredItems(saved, missed) : saved);
+        resolveEnding();   // the inventory changed without ItemAcquired events
+        checkpoint();
+        lastMessage = "Restored slot '" + parts[0] + "'" + (version > 0 ? " version " + version : "") + ".\n";
+        for (String item : missed) {
+            lastMessage += "Someone else holds the " + item + "; it was not restored.\n";
+        }
+        return true;
+    }
+
+    //the saved state minus items that are neither held nor claimable right now (shared world)
+    private PlayerState claimRestoredItems(PlayerState saved, List<String> missed) {
+        PlayerState state = new PlayerState();
+        state.userId = saved.userId;
+        state.currentRoom = saved.currentRoom;
+        state.attribute = saved.attribute;
+        for (String item : saved.inventory) {
+            Room room = world.findItemRoom(item);
+            if (player.hasItem(item) || (room != null && world.claimItem(room, room.getItem()))) {
+                state.inventory.add(item);
+            } else {
+                missed.add(item);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Shows realm-wide numbers kept live by PlayerStats: where players
+     * are, how often each item has been collected, the endings reached
+     * and what the top collectors hold.
+     *
+     * Command: stats
+     */
+    private boolean handleStats() {
+        PlayerStats stats = db.getStats();
+        if (stats == null) {
+            lastMessage = "Realm statistics are not kept on this server.\n";
+            return false;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("Adventurers in the realm: ").append(stats.totalPlayers()).append('\n');
+        sb.append("Where they stand:\n");
+        stats.playersPerRoom().forEach((room, count) ->
+            sb.append("  ").append(room).append(": ").append(count).append('\n'));
+        sb.append("Items collected:\n");
+        stats.playersPerItem().forEach((item, count) ->
+            sb.append("  ").append(item).append(": ").append(count)
+              .append(String.format(" (%.0f%%)", stats.collectionRate(item) * 100)).append('\n'));
+        Map<String, Long> endingsReached = stats.endingsReached();
+        if (!endingsReached.isEmpty()) {
+            sb.append("Endings reached:\n");
+            endingsReached.forEach((ending, count) ->
+                sb.append("  ").append(ending).append(": ").append(count).append('\n'));
+        }
+        List<PlayerStats.Ranked> top = stats.topCollectors(3);
+        if (!top.isEmpty()) {
+            sb.append("Top collectors hold:");
+            for (PlayerStats.Ranked r : top) {
+                sb.append(' ').append(r.items());
+            }
+            sb.append(" items\n");
+        }
+        lastMessage = sb.toString();
+        return true;
+    }
+
+    private boolean slotsAvailable() {
+        if (!db.supportsSlots()) {
+            lastMessage = "Save slots are not available on this server.\n";
+            return false;
+        }
+        return true;
+    }
+
+    private boolean validSlot(String slot) {
+        if (!slot.matches("[a-z0-9_-]{1,20}")) {
+            lastMessage = "Slot names are 1-20 letters, digits, '-' or '_'.\n";
+            return false;
+        }
+        return true;
+    }
+
+    /** Builds current room, inventory, and feedback. */
+    private String renderHud() {
+        return """
 ------------------------------
 Commands:
 travel <direction>
 equip <item>
 hint <room name>
 rooms
-save
+say <message>
+save [slot]
+history
+restore <slot> [version]
+stats
 exit
-------------------------------""");
-        System.out.println("You are in the " + player.getCurrentRoom());
-        System.out.println("Inventory: " + player.getInventory());
-        System.out.println("\n" + lastMessage);
+------------------------------
+"""
+            + "You are in the " + player.getCurrentRoom() + "\n"
+            + "Inventory: " + player.getInventory() + "\n"
+            + "\n" + lastMessage + "\n";
     }
 
     //capitalizes input consistently
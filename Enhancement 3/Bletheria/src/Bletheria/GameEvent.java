@@ -0,0 +1,18 @@
+package Bletheria;
+
+/**
+ * GameEvent is the set of state changes published on a session's EventBus.
+ * Subscribers (rendering, ending resolution, autosave, metrics) react to
+ * these instead of re-checking the player and world every turn.
+ */
+public sealed interface GameEvent {
+
+    // Player moved into a room
+    record RoomEntered(Player player, String fromRoom, String toRoom) implements GameEvent { }
+
+    // Player picked up an item they didn't have before
+    record ItemAcquired(Player player, String item, String roomName) implements GameEvent { }
+
+    // Player reached an ending (text is what EndingResolver produced)
+    record EndingReached(Player player, String roomName, String endingText) implements GameEvent { }
+}
@@ -0,0 +1,226 @@
+package Bletheria;
+
+/**
+ * GameSession binds one player's GameEngine to its own SessionMailbox.
+ *
+ * Front ends (console, TCP, HTTP) never call the engine directly; they
+ * submit command lines here. Every command for a session runs in arrival
+ * order on the session's mailbox, so Player and GameEngine stay confined
+ * to one logical thread and need no locks. Independent sessions drain in
+ * parallel on the shared executor.
+ *
+ * Each session also has a token bucket, so a client that floods commands
+ * gets an immediate "slow down" reply instead of growing its mailbox.
+ *
+ * An idle session can be passivated: its state is saved and the engine,
+ * player and world are dropped from memory. The next command rehydrates
+ * them from the saved state without the player logging in again. If the
+ * save can't be made durable the engine is kept, and the next idle check
+ * tries again.
+ *
+ * When attached to a RoomBroadcaster the session keeps one RoomInbox for
+ * its lifetime and re-joins room presence whenever its engine is rebuilt.
+ */
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+public class GameSession {
+    // Default command budget: bursts of 10, then 5 commands per second
+    private static final int COMMAND_BURST = 10;
+    private static final double COMMANDS_PER_SECOND = 5.0;
+
+    private final int userId;
+    private final String username;
+    private final StateStore db;
+    private final WorldMap sharedWorld;         // reused on rehydrate in shared-world mode
+    private final SessionMailbox mailbox;
+    private final TokenBucket commandLimit = new TokenBucket(COMMAND_BURST, COMMANDS_PER_SECOND);
+    private GameEngine engine;                  // null while passivated; only touched on the mailbox
+    private volatile boolean passivated = false;
+    private volatile boolean open = true;
+    private volatile long lastActive = System.currentTimeMillis();
+    private volatile RoomBroadcaster rooms;     // null for single-player sessions
+    private RoomInbox inbox;
+    private final List<TimingWheel.Timer> timers = new CopyOnWriteArrayList<>(); // cancelled on close
+
+    public GameSession(GameEngine engine, StateStore db) {
+        this(engine, db, new SessionMailbox());
+    }
+
+    public GameSession(GameEngine engine, StateStore db, SessionMailbox mailbox) {
+        this.engine = engine;
+        this.userId = engine.getPlayer().getUserId();
+        this.username = engine.getPlayer().getName();
+        this.db = db;
+        this.mailbox = mailbox;
+        this.sharedWorld = engine.getWorld().isShared() ? engine.getWorld() : null;
+        subscribe(engine);
+    }
+
+    public int getUserId() { return userId; }
+    public String getUsername() { return username; }
+    public boolean isOpen() { return open; }
+    public boolean isIdle() { return mailbox.isIdle(); }
+    public boolean isPassivated() { return passivated; }
+    public long getLastActive() { return lastActive; }
+
+    /**
+     * Queues a command line for this session. The reply callback receives
+     * the rendered view once the command has run (on the session's thread).
+     */
+    public void submit(String line, Consumer<String> reply) {
+        if (!commandLimit.tryAcquire()) {
+            reply.accept("You are acting too quickly. Try again in a moment.\n");
+            return;
+        }
+        lastActive = System.currentTimeMillis();
+        mailbox.post(() -> {
+            if (!open) {
+                reply.accept("Session closed.\n");
+                return;
+            }
+            GameEngine live = activeEngine();
+            if (live == null) {
+                reply.accept("Your saved game could not be restored.\n");
+                return;
+            }
+            if (!live.handleCommand(line)) {
+                close();
+                reply.accept("Farewell, " + username + ".\n");
+                return;
+            }
+            reply.accept(live.render());
+        });
+    }
+
+    // Runs arbitrary work on the session's thread (e.g. save on disconnect)
+    public void execute(Runnable task) {
+        mailbox.post(task);
+    }
+
+    // Timed checkpoint on the session's thread; clean and passivated sessions write nothing
+    public void autosave() {
+        mailbox.post(() -> {
+            if (engine != null) {
+                engine.checkpoint();
+            }
+        });
+    }
+
+    // Delivers a timed world event; shown with the player's next view
+    public void notify(String notice) {
+        mailbox.post(() -> {
+            if (engine != null) {
+                engine.addNotice(notice);
+            }
+        });
+    }
+
+    /**
+     * Checkpoints the player and returns a snapshot of it, taken on the
+     * session's thread (used for warm-restart snapshots). A passivated
+     * session answers with its saved state.
+     */
+    public CompletableFuture<PlayerState> capture() {
+        CompletableFuture<PlayerState> result = new CompletableFuture<>();
+        mailbox.post(() -> {
+            if (engine == null) {
+                result.complete(db.loadPlayerState(userId));
+                return;
+            }
+            db.checkpoint(engine.getPlayer());
+            result.complete(PlayerState.of(engine.getPlayer()));
+        });
+        return result;
+    }
+
+    // Puts this session into multiplayer presence for its current room
+    public void attachPresence(RoomBroadcaster broadcaster) {
+        mailbox.post(() -> {
+            rooms = broadcaster;
+            inbox = broadcaster.newInbox();
+            if (engine != null) {
+                engine.attachPresence(rooms, inbox);
+            }
+        });
+    }
+
+    // Keeps a timer so it is cancelled when the session closes
+    public void track(TimingWheel.Timer timer) {
+        timers.removeIf(TimingWheel.Timer::isExpired);
+        timers.add(timer);
+    }
+
+    // Marks the session closed, checkpoints it and cancels its timers
+    public void close() {
+        open = false;
+        mailbox.post(() -> {
+            if (engine != null) {
+                engine.disconnect();
+                engine.detachPresence();
+            }
+        });
+        for (TimingWheel.Timer timer : timers) {
+            timer.cancel();
+        }
+        timers.clear();
+    }
+
+    /**
+     * Saves the session and releases its engine, player and world.
+     * Runs on the session's mailbox so it can't race a command.
+     * Keeps the engine if the save failed, so no progress is lost.
+     */
+    public void passivate() {
+        mailbox.post(() -> {
+            if (engine == null) return;
+            if (!saveDurably(engine.getPlayer())) {
+                System.out.println("Could not save " + username + "; keeping the session in memory.");
+                return;
+            }
+            engine.detachPresence();
+            engine = null;
+            passivated = true;
+        });
+    }
+
+    //checkpoints and waits for the write; false if the save is still not on disk
+    private boolean saveDurably(Player player) {
+        try {
+            if (db.checkpoint(player)) {   // a clean player is already saved
+                db.flushSaves();
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Error saving " + username + ": " + e.getMessage());
+            return false;
+        }
+        return !player.isDirty() && !db.hasPendingSave(userId);
+    }
+
+    // Checkpoints when the player reaches an ending
+    private void subscribe(GameEngine live) {
+        live.getEvents().subscribe(GameEvent.EndingReached.class, e -> db.checkpoint(e.player()));
+    }
+
+    //returns the live engine, rebuilding it from the saved state if needed
+    private GameEngine activeEngine() {
+        if (engine != null) {
+            return engine;
+        }
+        PlayerState saved = db.loadPlayerState(userId);
+        if (saved == null) {
+            return null;
+        }
+        WorldMap world = sharedWorld != null ? sharedWorld : new WorldMap();
+        Player player = GameEngine.restorePlayer(username, userId, saved, world);
+        engine = new GameEngine(world, player, new EndingResolver(), db);
+        subscribe(engine);
+        if (rooms != null) {
+            engine.attachPresence(rooms, inbox);
+        }
+        passivated = false;
+        return engine;
+    }
+}
@@ -0,0 +1,78 @@
+package Bletheria;
+
+/**
+ * InMemoryStateStore is a StateStore backed by concurrent maps.
+ *
+ * Nothing touches the disk, so it suits benchmarks of the game loop,
+ * bot runs and ephemeral servers; everything is gone when the process
+ * exits. Passwords are still hashed with PasswordHasher so login costs
+ * the same as with SQLite; pass a hasher with fewer iterations to
+ * benchmark without that cost.
+ */
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class InMemoryStateStore implements StateStore {
+    private record Account(int userId, String passwordHash) { }
+
+    private final Map<String, Account> users = new ConcurrentHashMap<>();
+    private final Map<Integer, PlayerState> states = new ConcurrentHashMap<>();
+    private final AtomicInteger nextUserId = new AtomicInteger(1);
+    private final PasswordHasher hasher;
+
+    public InMemoryStateStore() {
+        this(new PasswordHasher());
+    }
+
+    public InMemoryStateStore(PasswordHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    public PasswordHasher getHasher() { return hasher; }
+
+    @Override
+    public int registerUser(String username, String plainPassword) {
+        if (users.containsKey(username)) {
+            return -1;
+        }
+        String passwordHash = hasher.hash(plainPassword);
+        Account account = new Account(nextUserId.getAndIncrement(), passwordHash);
+        // a concurrent registration of the same name may have won meanwhile
+        return users.putIfAbsent(username, account) == null ? account.userId() : -1;
+    }
+
+    @Override
+    public int authenticateUser(String username, String plainPassword) {
+        Account account = users.get(username);
+        if (account == null || !hasher.verify(plainPassword, account.passwordHash())) {
+            return -1;
+        }
+        return account.userId();
+    }
+
+    @Override
+    public void savePlayerState(Player player) {
+        long version = player.getVersion();
+        PlayerState state = PlayerState.of(player);
+        player.takeUnsavedItems();   // the full inventory is kept, so nothing tracks deltas here
+        states.put(state.userId, state);
+        player.markSaved(version);
+    }
+
+    @Override
+    public PlayerState loadPlayerState(int userId) {
+        return states.get(userId);
+    }
+
+    @Override
+    public void forEachPlayerState(Consumer<PlayerState> action) {
+        states.values().forEach(action);
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+}
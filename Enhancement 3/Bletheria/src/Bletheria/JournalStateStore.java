@@ -0,0 +1,566 @@
+package Bletheria;
+
+/**
+ * JournalStateStore is a StateStore that appends every account and save
+ * to a memory-mapped, append-only journal instead of a database.
+ *
+ * All we ever need back is the latest state per user, so a save is one
+ * small record copied into the mapped segment plus an index update (user
+ * ID to record location) - a few microseconds, with no SQL and no fsync
+ * on the save path. Records are in the page cache as soon as they are
+ * written, so they survive the process crashing; flushSaves() and close()
+ * force them to disk for machine crashes.
+ *
+ * Record layout:
+ *     int   payload length
+ *     int   CRC-32 of the payload
+ *     byte  type (USER or STATE), then the payload fields
+ * A STATE payload holds the SaveCodec bytes, or the text fields when the
+ * codec can't represent the state.
+ *
+ * The journal is a directory of segment files. When the active segment is
+ * full it is sealed and a new one started. Once enough sealed segments
+ * pile up, a background thread copies the records the index still points
+ * at into one compacted segment and deletes the rest. On startup every
+ * segment is replayed in order to rebuild the index; a record whose
+ * length or checksum is wrong (a torn write) ends the scan of that
+ * segment, and writing resumes in a fresh segment.
+ *
+ * Tunable with -Dbletheria.journal.dir, -Dbletheria.journal.segmentBytes
+ * and -Dbletheria.journal.compactAfter (sealed segments).
+ */
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+public class JournalStateStore implements StateStore {
+    private static final byte USER = 1;
+    private static final byte STATE = 2;
+    private static final byte FORMAT_TEXT = 0;
+    private static final byte FORMAT_CODEC = 1;
+    private static final int HEADER_BYTES = 8;
+
+    // segment-<id>-g<generation>.log; compaction rewrites an id with a higher generation
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)-g(\\d+)\\.log");
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int compactAfter;
+    private final PasswordHasher hasher;
+
+    // Record locations: segment id in the high 32 bits, offset in the low 32
+    private final Map<String, Long> userIndex = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> stateIndex = new ConcurrentHashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "bletheria-journal-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private Segment active;                 // guarded by the write lock
+    private int nextUserId = 1;             // guarded by the write lock
+    private long tornRecords = 0;           // found during recovery
+    private volatile long compactions = 0;
+
+    public JournalStateStore() {
+        this(Path.of(System.getProperty("bletheria.journal.dir", "bletheria-journal")),
+             Integer.getInteger("bletheria.journal.segmentBytes", 16 * 1024 * 1024),
+             Integer.getInteger("bletheria.journal.compactAfter", 4),
+             new PasswordHasher());
+    }
+
+    public JournalStateStore(Path dir, int segmentBytes, int compactAfter, PasswordHasher hasher) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.compactAfter = compactAfter;
+        this.hasher = hasher;
+        try {
+            Files.createDirectories(dir);
+            recover();
+            active = openSegment(segments.isEmpty() ? 1 : segments.lastKey() + 1, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open save journal in " + dir, e);
+        }
+    }
+
+    // A mapped segment file; only the active one is ever written
+    private static final class Segment {
+        final int id;
+        final int generation;
+        final Path path;
+        final MappedByteBuffer buffer;
+        int limit;                          // end of valid records
+
+        Segment(int id, int generation, Path path, MappedByteBuffer buffer, int limit) {
+            this.id = id;
+            this.generation = generation;
+            this.path = path;
+            this.buffer = buffer;
+            this.limit = limit;
+        }
+    }
+
+    // Journal metrics
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getTornRecords() { return tornRecords; }
+    public long getCompactions() { return compactions; }
+
+    @Override
+    public int registerUser(String username, String plainPassword) {
+        if (userIndex.containsKey(username)) {
+            return -1;
+        }
+        String passwordHash = hasher.hash(plainPassword);   // slow; done outside the lock
+        lock.writeLock().lock();
+        try {
+            if (userIndex.containsKey(username)) {
+                return -1;
+            }
+            int userId = nextUserId++;
+            userIndex.put(username, append(userRecord(userId, username, passwordHash)));
+            return userId;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int authenticateUser(String username, String plainPassword) {
+        DataInputStream in = readRecord(userIndex, username);
+        if (in == null) {
+            return -1;
+        }
+        int userId;
+        String storedHash;
+        try {
+            in.readByte();
+            userId = in.readInt();
+            in.readUTF();
+            storedHash = in.readUTF();
+        } catch (IOException e) {
+            return -1;
+        }
+        if (!hasher.verify(plainPassword, storedHash)) {
+            return -1;
+        }
+        if (hasher.needsUpgrade(storedHash)) {
+            byte[] record = userRecord(userId, username, hasher.hash(plainPassword));
+            lock.writeLock().lock();
+            try {
+                userIndex.put(username, append(record));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return userId;
+    }
+
+    @Override
+    public void savePlayerState(Player player) {
+        long version = player.getVersion();
+        PlayerState state = PlayerState.of(player);
+        player.takeUnsavedItems();   // the full inventory is in every record
+        byte[] record = stateRecord(state);
+        lock.writeLock().lock();
+        try {
+            stateIndex.put(state.userId, append(record));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        player.markSaved(version);
+    }
+
+    @Override
+    public PlayerState loadPlayerState(int userId) {
+        DataInputStream in = readRecord(stateIndex, userId);
+        if (in == null) {
+            return null;
+        }
+        try {
+            in.readByte();
+            PlayerState state = new PlayerState();
+            state.userId = in.readInt();
+            if (in.readByte() == FORMAT_CODEC) {
+                byte[] blob = new byte[in.readUnsignedShort()];
+                in.readFully(blob);
+                SaveCodec.decode(blob, state);
+            } else {
+                state.currentRoom = in.readUTF();
+                state.attribute = in.readUTF();
+                int items = in.readUnsignedShort();
+                for (int i = 0; i < items; i++) {
+                    state.inventory.add(in.readUTF());
+                }
+            }
+            return state;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error reading saved game for user " + userId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void forEachPlayerState(Consumer<PlayerState> action) {
+        for (Integer userId : stateIndex.keySet()) {
+            PlayerState state = loadPlayerState(userId);
+            if (state != null) action.accept(state);
+        }
+    }
+
+    // Forces the active segment to disk
+    @Override
+    public void flushSaves() {
+        lock.writeLock().lock();
+        try {
+            active.buffer.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Waits for a running compaction, which may still be moving and deleting segments
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.println("Save journal: compaction still running at close");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushSaves();
+    }
+
+    //---- records
+
+    private static byte[] userRecord(int userId, String username, String passwordHash) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(USER);
+            out.writeInt(userId);
+            out.writeUTF(username);
+            out.writeUTF(passwordHash);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] stateRecord(PlayerState state) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(STATE);
+            out.writeInt(state.userId);
+            byte[] blob = SaveCodec.encode(state);
+            if (blob != null) {
+                out.writeByte(FORMAT_CODEC);
+                out.writeShort(blob.length);
+                out.write(blob);
+            } else {
+                out.writeByte(FORMAT_TEXT);
+                out.writeUTF(state.currentRoom);
+                out.writeUTF(state.attribute);
+                out.writeShort(state.inventory.size());
+                for (String item : state.inventory) {
+                    out.writeUTF(item);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    //appends one record to the active segment (write lock held); returns its location
+    private long append(byte[] payload) {
+        int size = HEADER_BYTES + payload.length;
+        if (size > segmentBytes) {
+            throw new IllegalArgumentException("Journal record too large: " + size + " bytes");
+        }
+        if (active.limit + size > segmentBytes) {
+            rollSegment();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int offset = active.limit;
+        ByteBuffer buf = active.buffer;
+        buf.putInt(offset + 4, (int) crc.getValue());
+        buf.put(offset + HEADER_BYTES, payload);
+        buf.putInt(offset, payload.length);                    // length last: a zero length ends replay
+        active.limit = offset + size;
+        return location(active.id, offset);
+    }
+
+    //seals the active segment and starts the next one (write lock held)
+    private void rollSegment() {
+        try {
+            active.buffer.force();
+            active = openSegment(active.id + 1, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start a new journal segment", e);
+        }
+        if (segments.size() - 1 >= compactAfter && compacting.compareAndSet(false, true)) {
+            compactor.execute(this::compact);
+        }
+    }
+
+    //returns a stream over the payload of key's latest record, or null if there is none
+    private <K> DataInputStream readRecord(Map<K, Long> index, K key) {
+        lock.readLock().lock();   // compaction moves records, so look up and read under the lock
+        try {
+            Long location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            Segment segment = segments.get(segmentOf(location));
+            int offset = offsetOf(location);
+            byte[] payload = new byte[segment.buffer.getInt(offset)];
+            segment.buffer.get(offset + HEADER_BYTES, payload);
+            return new DataInputStream(new ByteArrayInputStream(payload));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long location(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentOf(long location) { return (int) (location >>> 32); }
+    private static int offsetOf(long location) { return (int) location; }
+
+    //---- segments, recovery and compaction
+
+    private Segment openSegment(int id, int generation) throws IOException {
+        Path path = dir.resolve(String.format("segment-%06d-g%d.log", id, generation));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(id, generation, path,
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes), 0);
+            segments.put(id, segment);
+            return segment;
+        }
+    }
+
+    //replays every segment in order to rebuild the indexes
+    private void recover() throws IOException {
+        TreeMap<Integer, Path> latest = new TreeMap<>();
+        TreeMap<Integer, Integer> generations = new TreeMap<>();
+        List<Path> stale = new ArrayList<>();
+        try (var files = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    stale.add(path);                 // compaction that never finished
+                    continue;
+                }
+                Matcher m = SEGMENT_NAME.matcher(name);
+                if (!m.matches()) continue;
+                int id = Integer.parseInt(m.group(1));
+                int generation = Integer.parseInt(m.group(2));
+                Integer seen = generations.get(id);
+                if (seen == null || generation > seen) {
+                    if (seen != null) stale.add(latest.get(id));
+                    latest.put(id, path);
+                    generations.put(id, generation);
+                } else {
+                    stale.add(path);
+                }
+            }
+        }
+        for (Path path : stale) {
+            Files.deleteIfExists(path);
+        }
+
+        for (Map.Entry<Integer, Path> entry : latest.entrySet()) {
+            int id = entry.getKey();
+            Segment segment = null;
+            try (FileChannel channel = FileChannel.open(entry.getValue(), StandardOpenOption.READ)) {
+                ByteBuffer first = ByteBuffer.allocate(4);
+                if (channel.read(first, 0) == 4 && first.getInt(0) != 0) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    segment = new Segment(id, generations.get(id), entry.getValue(), buffer, 0);
+                }
+            }
+            if (segment == null) {
+                Files.delete(entry.getValue());   // never written (e.g. the active one at last shutdown)
+                continue;
+            }
+            segment.limit = replay(segment);
+            segments.put(id, segment);
+        }
+    }
+
+    //applies a segment's records to the indexes; returns where the valid records end
+    private int replay(Segment segment) {
+        ByteBuffer buf = segment.buffer;
+        int pos = 0;
+        while (pos + HEADER_BYTES <= buf.capacity()) {
+            int length = buf.getInt(pos);
+            if (length == 0) {
+                break;                                   // end of written records
+            }
+            if (length < 0 || pos + HEADER_BYTES + length > buf.capacity()) {
+                tornRecords++;
+                break;
+            }
+            byte[] payload = new byte[length];
+            buf.get(pos + HEADER_BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buf.getInt(pos + 4)) {
+                tornRecords++;
+                System.out.println("Save journal: torn record in " + segment.path.getFileName()
+                                   + " at offset " + pos + "; ignoring the rest of the segment");
+                break;
+            }
+            apply(payload, location(segment.id, pos));
+            pos += HEADER_BYTES + length;
+        }
+        return pos;
+    }
+
+    private void apply(byte[] payload, long location) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte type = in.readByte();
+            int userId = in.readInt();
+            if (type == USER) {
+                userIndex.put(in.readUTF(), location);
+                nextUserId = Math.max(nextUserId, userId + 1);
+            } else if (type == STATE) {
+                stateIndex.put(userId, location);
+            }
+        } catch (IOException e) {
+            tornRecords++;
+        }
+    }
+
+    /**
+     * Copies every live record in the sealed segments into one new segment
+     * that takes the id of the newest sealed segment (one generation up),
+     * then drops the old ones. Sealed segments never change, so the copy
+     * runs without the lock; only the swap takes the write lock, and an
+     * index entry is only moved if a newer save hasn't replaced it meanwhile.
+     */
+    private void compact() {
+        try {
+            List<Segment> sealed;
+            lock.readLock().lock();
+            try {
+                sealed = new ArrayList<>(segments.headMap(active.id).values());
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (sealed.size() < 2) {
+                return;
+            }
+            Segment newest = sealed.get(sealed.size() - 1);
+            int generation = newest.generation + 1;
+            Map<Integer, Segment> byId = new TreeMap<>();
+            for (Segment s : sealed) byId.put(s.id, s);
+
+            Path target = dir.resolve(String.format("segment-%06d-g%d.log", newest.id, generation));
+            Path tmp = dir.resolve(target.getFileName() + ".tmp");
+            Map<String, long[]> movedUsers = new ConcurrentHashMap<>();
+            Map<Integer, long[]> movedStates = new ConcurrentHashMap<>();
+            int size;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                int[] offset = { 0 };
+                for (Map.Entry<String, Long> e : userIndex.entrySet()) {
+                    long moved = copyRecord(byId, e.getValue(), out, newest.id, offset);
+                    if (moved >= 0) movedUsers.put(e.getKey(), new long[] { e.getValue(), moved });
+                }
+                for (Map.Entry<Integer, Long> e : stateIndex.entrySet()) {
+                    long moved = copyRecord(byId, e.getValue(), out, newest.id, offset);
+                    if (moved >= 0) movedStates.put(e.getKey(), new long[] { e.getValue(), moved });
+                }
+                out.force(true);
+                size = offset[0];
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+
+            Segment compacted;
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ)) {
+                compacted = new Segment(newest.id, generation, target,
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, size), size);
+            }
+            lock.writeLock().lock();
+            try {
+                movedUsers.forEach((name, loc) -> userIndex.replace(name, loc[0], loc[1]));
+                movedStates.forEach((id, loc) -> stateIndex.replace(id, loc[0], loc[1]));
+                for (Segment s : sealed) segments.remove(s.id);
+                segments.put(newest.id, compacted);
+                compactions++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (Segment s : sealed) {
+                try {
+                    Files.deleteIfExists(s.path);
+                } catch (IOException e) {
+                    // still mapped on some platforms; replaying it later is harmless because
+                    // the compacted segment has a higher id and overrides it
+                    s.path.toFile().deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Save journal compaction failed: " + e.getMessage());
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    //copies a record if it lives in one of the segments being compacted
+    private static long copyRecord(Map<Integer, Segment> from, long location, FileChannel out,
+                                   int targetId, int[] offset) throws IOException {
+        Segment segment = from.get(segmentOf(location));
+        if (segment == null) {
+            return -1;
+        }
+        int start = offsetOf(location);
+        int size = HEADER_BYTES + segment.buffer.getInt(start);
+        ByteBuffer record = segment.buffer.slice(start, size);
+        while (record.hasRemaining()) {
+            out.write(record);
+        }
+        long moved = location(targetId, offset[0]);
+        offset[0] += size;
+        return moved;
+    }
+}
@@ -0,0 +1,73 @@
+package Bletheria;
+
+/**
+ * LoginAdmission bounds how many logins/registrations hit the database
+ * and the password hasher at once.
+ *
+ * At most 'concurrency' logins run at a time and at most 'maxWaiting'
+ * more may wait briefly for a slot. Anything beyond that is turned away
+ * immediately so a reconnect storm gets fast "try again" answers instead
+ * of piling up work.
+ *
+ * Limits can be tuned with -Dbletheria.login.concurrency,
+ * -Dbletheria.login.queue and -Dbletheria.login.waitMillis.
+ *
+ * The gate only works if every login goes through the same instance, so
+ * front ends should use getDefault() rather than making their own.
+ */
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoginAdmission {
+    private static final LoginAdmission DEFAULT = new LoginAdmission();
+
+    private final Semaphore slots;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final int maxWaiting;
+    private final long waitMillis;
+
+    public LoginAdmission() {
+        this(Integer.getInteger("bletheria.login.concurrency", 4),
+             Integer.getInteger("bletheria.login.queue", 32),
+             Long.getLong("bletheria.login.waitMillis", 2000L));
+    }
+
+    public LoginAdmission(int concurrency, int maxWaiting, long waitMillis) {
+        this.slots = new Semaphore(concurrency, true);
+        this.maxWaiting = maxWaiting;
+        this.waitMillis = waitMillis;
+    }
+
+    // Shared gate for every login in this process
+    public static LoginAdmission getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Tries to admit one login. Returns false right away when the wait
+     * queue is full, or after waitMillis if no slot frees up.
+     * Callers that get true must call leave() when done.
+     */
+    public boolean tryEnter() {
+        if (slots.tryAcquire()) {
+            return true;
+        }
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            return false;
+        }
+        try {
+            return slots.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public void leave() {
+        slots.release();
+    }
+}
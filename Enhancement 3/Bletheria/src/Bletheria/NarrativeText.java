@@ -0,0 +1,150 @@
+package Bletheria;
+
+/**
+ * NarrativeText serves the game's prose (intro, endings) from external
+ * resource files instead of string literals.
+ *
+ * Text lives in narrative/<locale>/<id>.txt next to this class and is only
+ * read when first asked for. Recently used text is kept in a cache bounded
+ * by total characters and evicted least-recently-used, so shipping many
+ * rooms and translations doesn't mean holding all of it in memory.
+ * Large passages can be streamed straight to an output without ever being
+ * built into a String.
+ *
+ * Lookup falls back from the most specific locale (e.g. fr_CA) to the
+ * language (fr) and finally to English.
+ */
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class NarrativeText {
+    private static final String FALLBACK_LOCALE = "en";
+    private static final int DEFAULT_CACHE_CHARS = 64 * 1024;
+
+    private static NarrativeText defaultInstance;
+
+    private final List<String> localeChain;
+    private final int maxCachedChars;
+    private final Map<String, String> cache = new LinkedHashMap<>(16, 0.75f, true); // access order = LRU
+    private int cachedChars = 0;
+
+    public NarrativeText(Locale locale, int maxCachedChars) {
+        this.localeChain = localeChain(locale);
+        this.maxCachedChars = maxCachedChars;
+    }
+
+    // Shared instance for the locale given by -Dbletheria.locale (or the JVM default)
+    public static synchronized NarrativeText getDefault() {
+        if (defaultInstance == null) {
+            String tag = System.getProperty("bletheria.locale");
+            Locale locale = tag == null ? Locale.getDefault() : Locale.forLanguageTag(tag.replace('_', '-'));
+            defaultInstance = new NarrativeText(locale, DEFAULT_CACHE_CHARS);
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Returns the text for an id, loading and caching it on first use.
+     * Missing text is reported and returned as an empty string.
+     */
+    public synchronized String get(String id) {
+        String text = cache.get(id);
+        if (text != null) {
+            return text;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        if (!copy(id, sb)) {
+            return "";
+        }
+        text = sb.toString();
+        remember(id, text);
+        return text;
+    }
+
+    /**
+     * Writes the text for an id to the output. Cached text is written as-is;
+     * otherwise the resource is copied through in chunks without building a
+     * String (and without filling the cache with a one-off passage).
+     */
+    public void streamTo(String id, Appendable out) throws IOException {
+        String cached;
+        synchronized (this) {
+            cached = cache.get(id);
+        }
+        if (cached != null) {
+            out.append(cached);
+        } else {
+            copy(id, out);
+        }
+    }
+
+    //copies the best-matching resource for the id into the output
+    private boolean copy(String id, Appendable out) {
+        InputStream in = open(id);
+        if (in == null) {
+            System.out.println("Missing narrative text: " + id);
+            return false;
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            char[] buf = new char[4096];
+            int n;
+            while ((n = reader.read(buf)) != -1) {
+                out.append(CharBuffer.wrap(buf, 0, n));
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error reading narrative text " + id + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private InputStream open(String id) {
+        for (String locale : localeChain) {
+            InputStream in = NarrativeText.class.getResourceAsStream("narrative/" + locale + "/" + id + ".txt");
+            if (in != null) return in;
+        }
+        return null;
+    }
+
+    // Adds text to the cache, evicting least-recently-used entries past the size bound
+    private void remember(String id, String text) {
+        if (text.length() > maxCachedChars) {
+            return; // too big to be worth caching
+        }
+        cache.put(id, text);
+        cachedChars += text.length();
+        Iterator<Map.Entry<String, String>> it = cache.entrySet().iterator();
+        while (cachedChars > maxCachedChars && it.hasNext()) {
+            Map.Entry<String, String> eldest = it.next();
+            cachedChars -= eldest.getValue().length();
+            it.remove();
+        }
+    }
+
+    // e.g. fr_CA -> [fr_CA, fr, en]
+    private static List<String> localeChain(Locale locale) {
+        List<String> chain = new ArrayList<>();
+        String language = locale.getLanguage();
+        if (!language.isEmpty()) {
+            if (!locale.getCountry().isEmpty()) {
+                chain.add(language + "_" + locale.getCountry());
+            }
+            chain.add(language);
+        }
+        if (!chain.contains(FALLBACK_LOCALE)) {
+            chain.add(FALLBACK_LOCALE);
+        }
+        return chain;
+    }
+}
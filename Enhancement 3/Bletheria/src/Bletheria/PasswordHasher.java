@@ -0,0 +1,127 @@
+package Bletheria;
+
+/**
+ * PasswordHasher derives and checks password hashes.
+ *
+ * New hashes use salted PBKDF2-HMAC-SHA256 and are stored as
+ *     pbkdf2$<iterations>$<salt hex>$<hash hex>
+ * so the work factor can be raised later (-Dbletheria.auth.iterations)
+ * without breaking existing accounts. Hashes from before this change are
+ * plain unsalted SHA-256 hex; they still verify, and needsUpgrade() tells
+ * the caller to re-store them in the new format.
+ *
+ * Every derivation is timed so the cost of hashing can be watched.
+ */
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+public class PasswordHasher {
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicLong derivations = new AtomicLong();
+    private final AtomicLong derivationNanos = new AtomicLong();
+
+    public PasswordHasher() {
+        this(Integer.getInteger("bletheria.auth.iterations", 100_000));
+    }
+
+    public PasswordHasher(int iterations) {
+        this.iterations = iterations;
+    }
+
+    // New salted hash in the stored format
+    public String hash(String plainPassword) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] derived = derive(plainPassword, salt, iterations);
+        return PREFIX + iterations + "$" + toHex(salt) + "$" + toHex(derived);
+    }
+
+    // Checks a password against a stored hash (new or legacy format)
+    public boolean verify(String plainPassword, String stored) {
+        if (stored == null) return false;
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(
+                legacySha256(plainPassword).getBytes(StandardCharsets.US_ASCII),
+                stored.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        int storedIterations = Integer.parseInt(parts[1]);
+        byte[] salt = fromHex(parts[2]);
+        byte[] expected = fromHex(parts[3]);
+        return MessageDigest.isEqual(expected, derive(plainPassword, salt, storedIterations));
+    }
+
+    // True for legacy hashes and hashes made with fewer iterations than configured
+    public boolean needsUpgrade(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) return true;
+        String[] parts = stored.split("\\$");
+        return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+    }
+
+    // Hashing metrics
+    public long getDerivations() { return derivations.get(); }
+
+    public double getAverageMillis() {
+        long n = derivations.get();
+        return n == 0 ? 0.0 : derivationNanos.get() / 1_000_000.0 / n;
+    }
+
+    private byte[] derive(String plainPassword, byte[] salt, int rounds) {
+        long start = System.nanoTime();
+        PBEKeySpec spec = new PBEKeySpec(plainPassword.toCharArray(), salt, rounds, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 is not available", e);
+        } finally {
+            spec.clearPassword();
+            derivations.incrementAndGet();
+            derivationNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    // Old unsalted format, kept only to verify existing accounts
+    private static String legacySha256(String plainPassword) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return toHex(digest.digest(plainPassword.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            return plainPassword; // matches the old plaintext fallback
+        }
+    }
+
+    // Table-driven hex encoding: one char[] and one String, no per-byte formatting
+    public static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            out[i * 2] = HEX[b >>> 4];
+            out[i * 2 + 1] = HEX[b & 0x0f];
+        }
+        return new String(out);
+    }
+
+    public static byte[] fromHex(String hex) {
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) ((Character.digit(hex.charAt(i * 2), 16) << 4)
+                           | Character.digit(hex.charAt(i * 2 + 1), 16));
+        }
+        return out;
+    }
+}
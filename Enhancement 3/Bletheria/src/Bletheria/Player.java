@@ -3,8 +3,23 @@ package Bletheria;
 /**
  * The Player class stores the player's state and inventory.
  * It keeps track of the current room, name, and attribute choice (Wisdom or Perception).
+ *
+ * Once an EventBus is attached, moving and picking up new items publish
+ * RoomEntered / ItemAcquired events. Restoring a save happens before the
+ * bus is attached, so it doesn't replay events.
+ *
+ * Items picked up since the last save are tracked separately so a save
+ * only has to write the new inventory rows.
+ *
+ * Every change to the room or inventory bumps a version number. The
+ * player is dirty while that version is newer than the last one saved,
+ * which is what lets autosave skip players with nothing new to write.
+ * A freshly created player is dirty until its first save.
  */
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 public class Player {
@@ -12,7 +27,13 @@ public class Player {
     private final String attributeChoice; // Wisdom or Perception
     private String currentRoom;           // Room player is currently in
     private final Set<String> inventory = new LinkedHashSet<>(); // Items collected
+    private final Set<String> unsavedItems = new LinkedHashSet<>(); // Items collected since last save
+    private boolean inventoryReplaced = false; // set by restoreTo until the next save
     private final int userId;            // Database user ID
+    private EventBus events;              // null until a GameEngine attaches one
+    private long version = 0;             // bumped on every room/inventory change
+    private long savedVersion = -1;       // version of the last save (-1: never saved)
+    private String sessionToken;          // token of this login, revoked on exit; not saved
 
     // Constructor to initialize player details
     public Player(String name, String attributeChoice, String startRoom, int userId) {
@@ -26,12 +47,39 @@ public class Player {
     public String getName() { return name; }
     public String getAttributeChoice() { return attributeChoice; }
     public String getCurrentRoom() { return currentRoom; }
-    public void setCurrentRoom(String room) { this.currentRoom = room; }
     public int getUserId() { return userId; }
+    public void setEventBus(EventBus events) { this.events = events; }
+    public long getVersion() { return version; }
+    public String getSessionToken() { return sessionToken; }
+    public void setSessionToken(String sessionToken) { this.sessionToken = sessionToken; }
+
+    // True if the player has changed since the last save
+    public boolean isDirty() { return version != savedVersion; }
+
+    // Records that the state as of 'savedAt' has been handed to the database
+    public void markSaved(long savedAt) { this.savedVersion = savedAt; }
+
+    public void setCurrentRoom(String room) {
+        String from = this.currentRoom;
+        this.currentRoom = room;
+        if (!room.equals(from)) {
+            version++;
+        }
+        if (events != null && !room.equals(from)) {
+            events.publish(new GameEvent.RoomEntered(this, from, room));
+        }
+    }
 
     // Adds item to inventory (avoiding duplicates)
     public void addItem(String item) {
-        inventory.add(capitalize(item.trim()));
+        String normalized = capitalize(item.trim());
+        if (inventory.add(normalized)) {
+            unsavedItems.add(normalized);
+            version++;
+            if (events != null) {
+                events.publish(new GameEvent.ItemAcquired(this, normalized, currentRoom));
+            }
+        }
     }
 
     // Checks if the player already has an item
@@ -42,19 +90,51 @@ public class Player {
     // Returns full inventory
     public Set<String> getInventory() { return inventory; }
 
+    // Items added since the last call; the caller is about to save them
+    public List<String> takeUnsavedItems() {
+        List<String> items = new ArrayList<>(unsavedItems);
+        unsavedItems.clear();
+        return items;
+    }
+
+    // Restores items that are already saved (not tracked as new)
+    public void loadInventory(Collection<String> items) {
+        for (String raw : items) {
+            String item = raw.trim();
+            if (!item.isEmpty()) {
+                inventory.add(capitalize(item));
+            }
+        }
+    }
+
+    /**
+     * Puts the player back to an earlier save (a restored save slot).
+     * Items picked up since then are dropped, so the next save rewrites
+     * the whole inventory instead of only adding to it.
+     */
+    public void restoreTo(PlayerState state) {
+        inventory.clear();
+        unsavedItems.clear();
+        loadInventory(state.inventory);
+        inventoryReplaced = true;
+        version++;
+        setCurrentRoom(state.currentRoom);
+    }
+
+    // True once after restoreTo; the caller is about to save the full inventory
+    public boolean takeInventoryReplaced() {
+        boolean replaced = inventoryReplaced;
+        inventoryReplaced = false;
+        return replaced;
+    }
+
     /**
      * Loads inventory items from a comma-separated string
      * stored in the database.
      */
     public void loadInventoryFromCsv(String csv) {
         if (csv == null || csv.isBlank()) return;
-        String[] parts = csv.split(",");
-        for (String raw : parts) {
-            String item = raw.trim();
-            if (!item.isEmpty()) {
-                addItem(item);
-            }
-        }
+        loadInventory(List.of(csv.split(",")));
     }
 
     // Helper to capitalize input consistently
@@ -0,0 +1,40 @@
+package Bletheria;
+
+/**
+ * PlayerState is a saved snapshot of a player: room, inventory and
+ * attribute. It is what every StateStore saves and loads.
+ *
+ * A snapshot is taken on the player's own thread and can then be handed
+ * to writer threads. States returned by loadPlayerState may be shared
+ * (cached) and must be treated as read-only.
+ */
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PlayerState {
+    public int userId;
+    public String currentRoom;
+    public List<String> inventory = new ArrayList<>();   // full inventory
+    public Set<String> addedItems = new LinkedHashSet<>(); // new since the last write
+    public String attribute;
+    public boolean inventoryReplaced;      // items may have been removed (slot restore): rewrite them all
+
+    // Snapshot of a player, safe to hand to another thread
+    public static PlayerState of(Player player) {
+        PlayerState state = new PlayerState();
+        state.userId = player.getUserId();
+        state.currentRoom = player.getCurrentRoom();
+        state.inventory.addAll(player.getInventory());
+        state.attribute = player.getAttributeChoice();
+        return state;
+    }
+
+    // Used when a newer save replaces an unwritten older one
+    public PlayerState withEarlierAdds(PlayerState older) {
+        addedItems.addAll(older.addedItems);
+        inventoryReplaced |= older.inventoryReplaced;
+        return this;
+    }
+}
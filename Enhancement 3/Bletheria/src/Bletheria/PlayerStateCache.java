@@ -0,0 +1,71 @@
+package Bletheria;
+
+/**
+ * PlayerStateCache is a bounded, least-recently-used cache of saved player
+ * states keyed by user ID.
+ *
+ * DatabaseManager reads through it on load and writes into it on every
+ * save, so a reconnecting player is served from memory and the cache
+ * never holds anything older than the last save. Hit, miss and eviction
+ * counts are kept so the size can be tuned.
+ */
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PlayerStateCache {
+    private final int capacity;
+    private final Map<Integer, PlayerState> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public PlayerStateCache(int capacity) {
+        this.capacity = capacity;
+        // access-order LinkedHashMap drops the least recently used entry first
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, PlayerState> eldest) {
+                if (size() > PlayerStateCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Cached state, or null on a miss
+    public synchronized PlayerState get(int userId) {
+        PlayerState state = entries.get(userId);
+        if (state == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return state;
+    }
+
+    public synchronized void put(PlayerState state) {
+        entries.put(state.userId, state);
+    }
+
+    // For states read from the database: never replace a newer saved state
+    public synchronized void putIfAbsent(PlayerState state) {
+        entries.putIfAbsent(state.userId, state);
+    }
+
+    public synchronized void invalidate(int userId) {
+        entries.remove(userId);
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+
+    @Override
+    public synchronized String toString() {
+        return "PlayerStateCache[size=" + entries.size() + "/" + capacity + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
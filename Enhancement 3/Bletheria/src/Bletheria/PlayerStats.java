@@ -0,0 +1,199 @@
+package Bletheria;
+
+/**
+ * PlayerStats keeps dashboard numbers up to date as players save, so
+ * reading them never scans player_state:
+ * - players per room (where each player's latest save is)
+ * - how many players hold each item, and the collection rate
+ * - how many distinct players reached each ending
+ * - a leaderboard of the players holding the most items
+ *
+ * Each save is folded in with record(): the player's previous room and
+ * items are subtracted and the new ones added, inside a per-user compute
+ * so concurrent saves of different players never lock each other. Reads
+ * are single counter lookups.
+ *
+ * reconcile() rebuilds the room and item counts from the store's saved
+ * states and repairs any drift, skipping players who saved while it ran.
+ * Ending counts are history (a player may walk away from the temple), so
+ * reconciling only adds players whose saved state is at an ending.
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PlayerStats {
+    // One leaderboard row
+    public record Ranked(int userId, int items) { }
+
+    // What was last counted for a player, and when (update sequence)
+    private record Counted(String room, Set<String> items, long seq) { }
+
+    private static final Comparator<Ranked> MOST_ITEMS =
+        Comparator.comparingInt(Ranked::items).reversed().thenComparingInt(Ranked::userId);
+
+    private final EndingResolver endings;
+    private final Map<Integer, Counted> players = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> roomCounts = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> itemCounts = new ConcurrentHashMap<>();
+    private final Map<String, Set<Integer>> endingPlayers = new ConcurrentHashMap<>();
+    private final NavigableSet<Ranked> leaderboard = new ConcurrentSkipListSet<>(MOST_ITEMS);
+    private final AtomicLong seq = new AtomicLong();
+    private volatile long lastReconcileMillis = 0;
+    private volatile long lastDrift = 0;
+
+    public PlayerStats(EndingResolver endings) {
+        this.endings = endings;
+    }
+
+    // Folds one saved state into the counters
+    public void record(PlayerState state) {
+        Set<String> items = new LinkedHashSet<>(state.inventory);
+        players.compute(state.userId, (id, old) -> {
+            apply(id, old, state.currentRoom, items);
+            return new Counted(state.currentRoom, items, seq.incrementAndGet());
+        });
+        String ending = endings.getEndingId(state.currentRoom, state.attribute, items);
+        if (ending != null) {
+            endingPlayers.computeIfAbsent(ending, k -> ConcurrentHashMap.newKeySet()).add(state.userId);
+        }
+    }
+
+    //moves one player's contribution from 'old' to the new room and items
+    private void apply(int userId, Counted old, String room, Set<String> items) {
+        if (old != null) {
+            counter(roomCounts, old.room()).decrementAndGet();
+            for (String item : old.items()) counter(itemCounts, item).decrementAndGet();
+            leaderboard.remove(new Ranked(userId, old.items().size()));
+        }
+        if (room != null) {
+            counter(roomCounts, room).incrementAndGet();
+            for (String item : items) counter(itemCounts, item).incrementAndGet();
+            leaderboard.add(new Ranked(userId, items.size()));
+        }
+    }
+
+    private static AtomicLong counter(Map<String, AtomicLong> counts, String key) {
+        return counts.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    //---- queries
+
+    public long totalPlayers() { return players.size(); }
+
+    public long playersIn(String room) {
+        AtomicLong count = roomCounts.get(room);
+        return count == null ? 0 : count.get();
+    }
+
+    public long playersWithItem(String item) {
+        AtomicLong count = itemCounts.get(item);
+        return count == null ? 0 : count.get();
+    }
+
+    // Share of players holding the item, 0.0 - 1.0
+    public double collectionRate(String item) {
+        long total = totalPlayers();
+        return total == 0 ? 0.0 : (double) playersWithItem(item) / total;
+    }
+
+    public long playersReached(String endingId) {
+        Set<Integer> reached = endingPlayers.get(endingId);
+        return reached == null ? 0 : reached.size();
+    }
+
+    // Copies for a dashboard (the key sets are the handful of rooms/items/endings)
+    public Map<String, Long> playersPerRoom() { return snapshot(roomCounts); }
+    public Map<String, Long> playersPerItem() { return snapshot(itemCounts); }
+
+    public Map<String, Long> endingsReached() {
+        Map<String, Long> copy = new TreeMap<>();
+        endingPlayers.forEach((id, reached) -> copy.put(id, (long) reached.size()));
+        return copy;
+    }
+
+    // The n players holding the most items
+    public List<Ranked> topCollectors(int n) {
+        List<Ranked> top = new ArrayList<>(n);
+        for (Ranked r : leaderboard) {
+            if (top.size() == n) break;
+            top.add(r);
+        }
+        return Collections.unmodifiableList(top);
+    }
+
+    public long getLastReconcileMillis() { return lastReconcileMillis; }
+    public long getLastDrift() { return lastDrift; }
+
+    private static Map<String, Long> snapshot(Map<String, AtomicLong> counts) {
+        Map<String, Long> copy = new TreeMap<>();
+        counts.forEach((key, count) -> {
+            if (count.get() != 0) copy.put(key, count.get());
+        });
+        return copy;
+    }
+
+    //---- reconciliation
+
+    /**
+     * Re-reads every saved state from the store and corrects players whose
+     * counted room or items don't match it. Players that saved after the
+     * scan started are left alone (their counters are newer than the scan).
+     * Each state is compared as the store streams it, so only the ids seen
+     * are kept, not the states.
+     *
+     * The first call loads the counters for players saved before startup;
+     * players it meets for the first time there are not drift.
+     *
+     * @return the number of players that had to be corrected (also kept for getLastDrift())
+     */
+    public long reconcile(StateStore store) {
+        boolean loading = lastReconcileMillis == 0;
+        long scanStart = seq.get();
+        store.flushSaves();
+        Set<Integer> seen = new HashSet<>();
+        AtomicLong drift = new AtomicLong();
+        store.forEachPlayerState(state -> {
+            seen.add(state.userId);
+            Set<String> items = new LinkedHashSet<>(state.inventory);
+            players.compute(state.userId, (id, old) -> {
+                if (old != null && (old.seq() > scanStart
+                        || (old.room().equals(state.currentRoom) && old.items().equals(items)))) {
+                    return old;
+                }
+                if (old != null || !loading) {
+                    drift.incrementAndGet();
+                }
+                apply(id, old, state.currentRoom, items);
+                return new Counted(state.currentRoom, items, seq.incrementAndGet());
+            });
+            String ending = endings.getEndingId(state.currentRoom, state.attribute, items);
+            if (ending != null) {
+                endingPlayers.computeIfAbsent(ending, k -> ConcurrentHashMap.newKeySet()).add(state.userId);
+            }
+        });
+        // counted players with no saved state any more
+        for (Integer userId : players.keySet()) {
+            if (seen.contains(userId)) continue;
+            players.computeIfPresent(userId, (id, old) -> {
+                if (old.seq() > scanStart) return old;
+                drift.incrementAndGet();
+                apply(id, old, null, Set.of());
+                return null;
+            });
+        }
+        lastReconcileMillis = System.currentTimeMillis();
+        lastDrift = drift.get();
+        return lastDrift;
+    }
+}
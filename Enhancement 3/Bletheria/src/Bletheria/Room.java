@@ -3,14 +3,20 @@ package Bletheria;
 /**
  * The Room class defines each location in the world.
  * Each room has a name, optional item, exits, and an optional boss.
+ *
+ * The item slot is atomic so that in a shared world (see WorldMap.shared)
+ * exactly one player can claim it with a compare-and-set; it is put back
+ * later by respawnItem().
  */
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Room {
     private final String name;                     // Room name
     private final Map<String, String> exits = new HashMap <> (); // Direction -> Room name
-    private String item;                           // Optional item in this room
+    private final AtomicReference<String> item = new AtomicReference<>(); // Item currently on the pedestal
+    private String spawnItem;                      // Item this room starts with / respawns
     private String bossName;                       // Optional boss name
 
     public Room(String name) {
@@ -20,11 +26,25 @@ public class Room {
     // Basic getters/setters
     public String getName() { return name; }
     public Map<String, String> getExits() { return exits; }
-    public String getItem() { return item; }
-    public void setItem(String item) { this.item = item; }
+    public String getItem() { return item.get(); }
+    public void setItem(String item) {
+        this.spawnItem = item;
+        this.item.set(item);
+    }
+    public String getSpawnItem() { return spawnItem; }
     public String getBossName() { return bossName; }
     public void setBossName(String bossName) { this.bossName = bossName; }
 
+    // Takes the item off the pedestal; only one caller can win
+    public boolean claimItem(String expected) {
+        return expected != null && item.compareAndSet(expected, null);
+    }
+
+    // Puts the original item back if the pedestal is empty
+    public boolean respawnItem() {
+        return spawnItem != null && item.compareAndSet(null, spawnItem);
+    }
+
     // Adds an exit to another room
     public void addExit(String direction, String destinationRoom) {
         exits.put(capitalize(direction), destinationRoom);
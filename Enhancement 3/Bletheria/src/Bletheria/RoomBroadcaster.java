@@ -0,0 +1,104 @@
+package Bletheria;
+
+/**
+ * RoomBroadcaster is the hub for multiplayer room presence.
+ *
+ * It keeps one RoomChannel per room name (shared by every session, even
+ * though each player has their own WorldMap) and flushes the channels that
+ * had activity once per tick. Each session reads its broadcasts from its own
+ * RoomInbox, so a slow reader only ever loses its own messages.
+ *
+ * The tick itself only hands the flush to a single fan-out thread, since
+ * tasks on the TimingWheel's ticker must stay short. A tick that finds a
+ * flush still queued adds nothing; that flush picks up the new events.
+ */
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class RoomBroadcaster {
+    // Ring size per session; older clients just miss chatter beyond this
+    public static final int INBOX_CAPACITY = 64;
+
+    private final Map<String, RoomChannel> channels = new ConcurrentHashMap<>();
+    private final Queue<RoomChannel> dirty = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    // One thread, so each RoomInbox keeps a single writer
+    private final ExecutorService fanout = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "bletheria-room-fanout");
+        t.setDaemon(true);
+        return t;
+    });
+    private final TimingWheel.Timer flushTimer;
+
+    public RoomBroadcaster(TimingWheel timers, long flushInterval, TimeUnit unit) {
+        this.flushTimer = timers.scheduleAtFixedRate(this::scheduleFlush, flushInterval, unit);
+    }
+
+    public RoomInbox newInbox() {
+        return new RoomInbox(INBOX_CAPACITY);
+    }
+
+    public void enter(RoomInbox inbox, String playerName, String roomName) {
+        RoomChannel channel = channel(roomName);
+        channel.join(inbox, playerName);
+        publish(channel, inbox, playerName + " arrives.");
+    }
+
+    public void leave(RoomInbox inbox, String playerName, String roomName) {
+        RoomChannel channel = channel(roomName);
+        channel.leave(inbox);
+        publish(channel, null, playerName + " leaves.");
+    }
+
+    public void move(RoomInbox inbox, String playerName, String fromRoom, String toRoom) {
+        leave(inbox, playerName, fromRoom);
+        enter(inbox, playerName, toRoom);
+    }
+
+    public void say(RoomInbox inbox, String playerName, String roomName, String text) {
+        publish(channel(roomName), inbox, playerName + " says: " + text);
+    }
+
+    // Number of sessions currently in a room
+    public int population(String roomName) {
+        RoomChannel channel = channels.get(roomName);
+        return channel == null ? 0 : channel.size();
+    }
+
+    public void shutdown() {
+        flushTimer.cancel();
+        fanout.shutdown();
+    }
+
+    private RoomChannel channel(String roomName) {
+        return channels.computeIfAbsent(roomName, RoomChannel::new);
+    }
+
+    private void publish(RoomChannel channel, RoomInbox sender, String text) {
+        if (channel.publish(sender, text)) {
+            dirty.offer(channel);
+        }
+    }
+
+    //ticker thread: hands the flush to the fan-out thread unless one is already waiting
+    private void scheduleFlush() {
+        if (!dirty.isEmpty() && flushQueued.compareAndSet(false, true)) {
+            fanout.execute(this::flush);
+        }
+    }
+
+    //fan-out thread: one batched delivery per busy room
+    private void flush() {
+        flushQueued.set(false);
+        RoomChannel channel;
+        while ((channel = dirty.poll()) != null) {
+            channel.flush();
+        }
+    }
+}
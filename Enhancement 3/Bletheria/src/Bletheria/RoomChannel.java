@@ -0,0 +1,111 @@
+package Bletheria;
+
+/**
+ * RoomChannel is the pub/sub channel for one room.
+ *
+ * It tracks which sessions are present and collects arrivals, departures
+ * and speech as they happen. Nothing is sent on publish; the broadcaster
+ * flushes each busy channel once per tick, joining that tick's events into
+ * a single batch per subscriber. Publishing is lock-free, so thousands of
+ * players in one room never contend on a lock.
+ *
+ * The batch is built once. Listeners who said nothing that tick all get
+ * the same string; each sender gets a copy with their own lines cut out,
+ * made in one pass from the line offsets recorded while building it.
+ */
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class RoomChannel {
+    private final String roomName;
+    private final Map<RoomInbox, String> present = new ConcurrentHashMap<>(); // inbox -> player name
+    private final Queue<Event> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    // One published line, remembering who sent it so they don't hear themselves
+    private record Event(RoomInbox sender, String text) { }
+
+    public RoomChannel(String roomName) {
+        this.roomName = roomName;
+    }
+
+    public String getRoomName() { return roomName; }
+    public int size() { return present.size(); }
+    public Iterable<String> playerNames() { return present.values(); }
+
+    void join(RoomInbox inbox, String playerName) {
+        present.put(inbox, playerName);
+    }
+
+    void leave(RoomInbox inbox) {
+        present.remove(inbox);
+    }
+
+    /**
+     * Queues an event for the next flush.
+     * @return true if the channel just became dirty and needs a flush
+     */
+    boolean publish(RoomInbox sender, String text) {
+        pending.offer(new Event(sender, text));
+        return dirty.compareAndSet(false, true);
+    }
+
+    //delivers everything published since the last flush as one batch per subscriber
+    void flush() {
+        dirty.set(false);
+        StringBuilder all = new StringBuilder();
+        Map<RoomInbox, OwnLines> ownLines = null; // senders see the batch minus their own lines
+        Event e;
+        while ((e = pending.poll()) != null) {
+            int start = all.length();
+            all.append(e.text()).append('\n');
+            if (e.sender() != null) {
+                if (ownLines == null) ownLines = new HashMap<>();
+                ownLines.computeIfAbsent(e.sender(), k -> new OwnLines()).add(start, all.length());
+            }
+        }
+        if (all.length() == 0) {
+            return;
+        }
+
+        String batch = all.toString();
+        for (RoomInbox inbox : present.keySet()) {
+            OwnLines own = ownLines == null ? null : ownLines.get(inbox);
+            if (own == null) {
+                inbox.offer(batch);
+            } else if (own.chars < batch.length()) {
+                inbox.offer(own.cutFrom(batch));
+            }
+        }
+    }
+
+    // Where one sender's lines sit in the batch, in order, as [start, end) pairs
+    private static final class OwnLines {
+        private int[] ranges = new int[4];
+        private int size;
+        private int chars;
+
+        void add(int start, int end) {
+            if (size == ranges.length) ranges = Arrays.copyOf(ranges, size * 2);
+            ranges[size++] = start;
+            ranges[size++] = end;
+            chars += end - start;
+        }
+
+        // The batch with these lines left out
+        String cutFrom(String batch) {
+            StringBuilder sb = new StringBuilder(batch.length() - chars);
+            int from = 0;
+            for (int i = 0; i < size; i += 2) {
+                sb.append(batch, from, ranges[i]);
+                from = ranges[i + 1];
+            }
+            return sb.append(batch, from, batch.length()).toString();
+        }
+    }
+}
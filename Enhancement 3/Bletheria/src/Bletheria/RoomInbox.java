@@ -0,0 +1,56 @@
+package Bletheria;
+
+/**
+ * RoomInbox is a session's bounded ring buffer of room broadcasts.
+ *
+ * The broadcaster's fan-out thread is the only writer and the session's own
+ * thread is the only reader, so a plain single-producer/single-consumer
+ * ring is enough. When a slow client lets it fill up, new batches are
+ * dropped (and counted) rather than blocking the room for everyone else.
+ */
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RoomInbox {
+    private final String[] ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next slot to read
+    private final AtomicLong tail = new AtomicLong(); // next slot to write
+    private final AtomicLong dropped = new AtomicLong();
+
+    public RoomInbox(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1; // round up to a power of two
+        this.ring = new String[size];
+        this.mask = size - 1;
+    }
+
+    // Writer side: returns false (and counts a drop) if the ring is full
+    boolean offer(String batch) {
+        long t = tail.get();
+        if (t - head.get() >= ring.length) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        ring[(int) (t & mask)] = batch;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // Reader side: everything received since the last drain, or "" if nothing
+    public String drain() {
+        long h = head.get();
+        long t = tail.get();
+        if (h == t) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (; h < t; h++) {
+            int slot = (int) (h & mask);
+            sb.append(ring[slot]);
+            ring[slot] = null;
+        }
+        head.lazySet(h);
+        return sb.toString();
+    }
+
+    public long getDropped() { return dropped.get(); }
+}
@@ -0,0 +1,136 @@
+package Bletheria;
+
+/**
+ * SaveCodec is the compact binary encoding of a saved player state,
+ * stored in player_state.state_blob.
+ *
+ * Layout (version 1):
+ *     byte    schema version
+ *     varint  room id           (index into ROOMS)
+ *     byte    attribute flag    (0 = Perception, 1 = Wisdom)
+ *     varint  inventory bitmask (bit i = ITEMS[i])
+ *
+ * A typical save is 3-4 bytes. Decoding reads names from the constant
+ * tables below, so no intermediate strings are built. States the format
+ * can't represent (an unknown room, item or attribute) are not encoded;
+ * DatabaseManager then stores them in the text columns as before.
+ */
+public final class SaveCodec {
+    public static final byte VERSION = 1;
+
+    // Append-only: the index of each entry is what is stored on disk
+    private static final String[] ROOMS = {
+        "Ashen Foyer",
+        "The Acrid Swamp",
+        "Cursed Workshop of Azazel the Ensnared",
+        "Rotten Forrest",
+        "Wiwaria Common",
+        "Forgotten Hut of Secret Spaces",
+        "Secret Cavern",
+        "The Haunted Library of Wayward Souls",
+        "Demon High Temple"
+    };
+
+    // Append-only, same as ROOMS; at most 63 items fit the bitmask
+    private static final String[] ITEMS = {
+        "Potion", "Mask", "Wand", "Grieves", "Cloak", "Key", "Spellbook"
+    };
+
+    private static final String[] ATTRIBUTES = { "Perception", "Wisdom" };
+
+    private SaveCodec() { }
+
+    /**
+     * Encodes a state, or returns null if it uses a room, item or
+     * attribute this version of the format doesn't know.
+     */
+    public static byte[] encode(PlayerState state) {
+        int room = indexOf(ROOMS, state.currentRoom);
+        int attribute = indexOf(ATTRIBUTES, state.attribute);
+        if (room < 0 || attribute < 0) {
+            return null;
+        }
+        long mask = 0;
+        for (String item : state.inventory) {
+            int bit = indexOf(ITEMS, item);
+            if (bit < 0) return null;
+            mask |= 1L << bit;
+        }
+
+        byte[] buf = new byte[1 + 5 + 1 + 10];
+        int pos = 0;
+        buf[pos++] = VERSION;
+        pos = writeVarint(buf, pos, room);
+        buf[pos++] = (byte) attribute;
+        pos = writeVarint(buf, pos, mask);
+        byte[] out = new byte[pos];
+        System.arraycopy(buf, 0, out, 0, pos);
+        return out;
+    }
+
+    /**
+     * Fills in room, attribute and inventory from an encoded save.
+     * Every read is bounds-checked, so truncated or corrupt data only ever
+     * fails with IllegalArgumentException.
+     * @throws IllegalArgumentException for an unknown version or bad data
+     */
+    public static void decode(byte[] data, PlayerState into) {
+        if (data.length == 0 || data[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported save version");
+        }
+        int[] pos = { 1 };
+        long room = readVarint(data, pos);
+        int attribute = readByte(data, pos);
+        long mask = readVarint(data, pos);
+        if (room < 0 || room >= ROOMS.length || attribute >= ATTRIBUTES.length
+                || (mask >>> ITEMS.length) != 0) {
+            throw new IllegalArgumentException("Corrupt save data");
+        }
+
+        into.currentRoom = ROOMS[(int) room];
+        into.attribute = ATTRIBUTES[attribute];
+        for (int bit = 0; bit < ITEMS.length; bit++) {
+            if ((mask & (1L << bit)) != 0) {
+                into.inventory.add(ITEMS[bit]);
+            }
+        }
+    }
+
+    // LEB128: 7 bits per byte, high bit set on all but the last byte
+    private static int writeVarint(byte[] buf, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int readByte(byte[] data, int[] pos) {
+        if (pos[0] >= data.length) {
+            throw new IllegalArgumentException("Truncated save data");
+        }
+        return data[pos[0]++] & 0xFF;
+    }
+
+    private static long readVarint(byte[] data, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            if (pos[0] >= data.length || shift > 63) {
+                throw new IllegalArgumentException("Truncated save data");
+            }
+            byte b = data[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+            shift += 7;
+        }
+    }
+
+    private static int indexOf(String[] table, String value) {
+        for (int i = 0; i < table.length; i++) {
+            if (table[i].equals(value)) return i;
+        }
+        return -1;
+    }
+}
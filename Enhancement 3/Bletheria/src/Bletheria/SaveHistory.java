@@ -0,0 +1,230 @@
+package Bletheria;
+
+/**
+ * SaveHistory keeps named save slots for each user, with a bounded
+ * history of earlier saves in every slot.
+ *
+ * Saving to a slot adds a new version. Most versions are stored as a diff
+ * from the one before (the new room if it changed, and the items picked
+ * up since); every KEYFRAME_EVERY-th version, and any save that lost
+ * items (after a restore), is stored in full. Restoring a version reads
+ * the nearest full version at or before it and applies at most
+ * KEYFRAME_EVERY - 1 diffs. Only the last HISTORY_DEPTH versions per
+ * slot are guaranteed to be kept; older ones are pruned a whole keyframe
+ * group at a time so every kept version stays restorable.
+ *
+ * Slot saves are explicit and rare, so they are written straight away
+ * rather than through the write-behind SaveQueue. Each one reads the
+ * slot's latest version before inserting the next, so it takes the write
+ * lock up front (BEGIN IMMEDIATE): a deferred transaction that has read
+ * can't upgrade to a write while the save writer is committing, and
+ * SQLite fails it with SQLITE_BUSY instead of waiting.
+ *
+ * Tunable with -Dbletheria.history.keyframeEvery and
+ * -Dbletheria.history.depth.
+ */
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class SaveHistory {
+    private static final int KEYFRAME_EVERY = Integer.getInteger("bletheria.history.keyframeEvery", 8);
+    private static final int HISTORY_DEPTH = Integer.getInteger("bletheria.history.depth", 32);
+
+    private static final String INSERT_VERSION = """
+        INSERT INTO save_history(user_id, slot, version, keyframe, room, attribute, items, saved_at)
+        VALUES(?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+
+    // One saved version of a slot, as listed to the player
+    public record Entry(String slot, long version, String room, long savedAt) { }
+
+    private final ConnectionPool pool;
+
+    public SaveHistory(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    // Called from DatabaseManager.createTables
+    static void createTable(Statement stmt) throws SQLException {
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS save_history (
+                user_id INTEGER NOT NULL,
+                slot TEXT NOT NULL,
+                version INTEGER NOT NULL,
+                keyframe INTEGER NOT NULL,
+                room TEXT,
+                attribute TEXT,
+                items TEXT,
+                saved_at INTEGER NOT NULL,
+                PRIMARY KEY(user_id, slot, version),
+                FOREIGN KEY(user_id) REFERENCES users(user_id)
+            );
+            """);
+        // keyframe: 1 = whole state; 0 = diff from version - 1 (room NULL if unchanged, items = added)
+    }
+
+    /**
+     * Adds the state as the next version of the slot.
+     * @return the new version number, or -1 if it could not be saved
+     */
+    public long save(PlayerState state, String slot) {
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            lease.prepare("BEGIN IMMEDIATE").execute();   // waits out other writers (busy_timeout)
+            try {
+                long latest = latestVersion(lease, state.userId, slot);
+                PlayerState previous = latest > 0 ? load(lease, state.userId, slot, latest) : null;
+                long version = latest + 1;
+
+                Set<String> added = new LinkedHashSet<>(state.inventory);
+                boolean full = previous == null
+                    || (version - 1) % KEYFRAME_EVERY == 0
+                    || !state.inventory.containsAll(previous.inventory)
+                    || !state.attribute.equals(previous.attribute);
+                if (!full) {
+                    added.removeAll(previous.inventory);
+                }
+
+                PreparedStatement ps = lease.prepare(INSERT_VERSION);
+                ps.setInt(1, state.userId);
+                ps.setString(2, slot);
+                ps.setLong(3, version);
+                ps.setInt(4, full ? 1 : 0);
+                ps.setString(5, full || !state.currentRoom.equals(previous.currentRoom) ? state.currentRoom : null);
+                ps.setString(6, full ? state.attribute : null);
+                ps.setString(7, added.isEmpty() ? null : String.join(",", added));
+                ps.setLong(8, System.currentTimeMillis());
+                ps.executeUpdate();
+
+                prune(lease, state.userId, slot, version);
+                lease.prepare("COMMIT").execute();
+                return version;
+            } catch (SQLException | RuntimeException e) {
+                lease.prepare("ROLLBACK").execute();
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.out.println("Error saving to slot '" + slot + "': " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Rebuilds one version of a slot (version <= 0 means the latest).
+     * @return the state, or null if the slot or version doesn't exist
+     */
+    public PlayerState load(int userId, String slot, long version) {
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            long latest = latestVersion(lease, userId, slot);
+            long target = version > 0 ? version : latest;
+            return target > 0 && target <= latest ? load(lease, userId, slot, target) : null;
+        } catch (SQLException e) {
+            System.out.println("Error loading slot '" + slot + "': " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Every kept version of every slot, newest first within a slot
+    public List<Entry> list(int userId) {
+        String sql = """
+            SELECT slot, version, saved_at,
+                   (SELECT room FROM save_history r
+                     WHERE r.user_id = h.user_id AND r.slot = h.slot
+                       AND r.version <= h.version AND r.room IS NOT NULL
+                     ORDER BY r.version DESC LIMIT 1) AS room
+            FROM save_history h
+            WHERE user_id = ?
+            ORDER BY slot, version DESC
+            """;
+        List<Entry> entries = new ArrayList<>();
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement ps = lease.prepare(sql);
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    entries.add(new Entry(rs.getString("slot"), rs.getLong("version"),
+                                          rs.getString("room"), rs.getLong("saved_at")));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error listing save slots: " + e.getMessage());
+        }
+        return entries;
+    }
+
+    private static long latestVersion(ConnectionPool.Lease lease, int userId, String slot) throws SQLException {
+        PreparedStatement ps = lease.prepare(
+            "SELECT MAX(version) FROM save_history WHERE user_id = ? AND slot = ?");
+        ps.setInt(1, userId);
+        ps.setString(2, slot);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;   // MAX of no rows reads as 0
+        }
+    }
+
+    //nearest full version at or before 'version', then the diffs after it in order
+    private static PlayerState load(ConnectionPool.Lease lease, int userId, String slot, long version)
+            throws SQLException {
+        PreparedStatement ps = lease.prepare("""
+            SELECT version, keyframe, room, attribute, items FROM save_history
+            WHERE user_id = ? AND slot = ? AND version <= ?
+              AND version >= (SELECT MAX(version) FROM save_history
+                              WHERE user_id = ? AND slot = ? AND version <= ? AND keyframe = 1)
+            ORDER BY version
+            """);
+        ps.setInt(1, userId);
+        ps.setString(2, slot);
+        ps.setLong(3, version);
+        ps.setInt(4, userId);
+        ps.setString(5, slot);
+        ps.setLong(6, version);
+
+        PlayerState state = null;
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                if (rs.getInt("keyframe") == 1) {
+                    state = new PlayerState();
+                    state.userId = userId;
+                    state.attribute = rs.getString("attribute");
+                }
+                String room = rs.getString("room");
+                if (room != null) {
+                    state.currentRoom = room;
+                }
+                String items = rs.getString("items");
+                if (items != null) {
+                    for (String item : items.split(",")) {
+                        if (!state.inventory.contains(item)) state.inventory.add(item);
+                    }
+                }
+            }
+        }
+        return state;
+    }
+
+    //drops keyframe groups that lie wholly before the last HISTORY_DEPTH versions
+    private static void prune(ConnectionPool.Lease lease, int userId, String slot, long latest)
+            throws SQLException {
+        long oldestKept = latest - HISTORY_DEPTH + 1;
+        if (oldestKept <= 1) {
+            return;
+        }
+        PreparedStatement ps = lease.prepare("""
+            DELETE FROM save_history
+            WHERE user_id = ? AND slot = ?
+              AND version < (SELECT MAX(version) FROM save_history
+                             WHERE user_id = ? AND slot = ? AND version <= ? AND keyframe = 1)
+            """);
+        ps.setInt(1, userId);
+        ps.setString(2, slot);
+        ps.setInt(3, userId);
+        ps.setString(4, slot);
+        ps.setLong(5, oldestKept);
+        ps.executeUpdate();
+    }
+}
@@ -0,0 +1,222 @@
+package Bletheria;
+
+/**
+ * SaveQueue is the write-behind buffer in front of player_state.
+ *
+ * savePlayerState only records the latest snapshot per user here and
+ * returns. A background writer wakes every few milliseconds (or when
+ * asked to flush), takes everything pending and hands it to the batch
+ * writer, which commits it as one transaction. Several saves by the same
+ * user between flushes collapse into one row write (their newly added
+ * items are merged), and many users' saves share one commit (group
+ * commit) instead of one fsync each.
+ *
+ * If a batch fails, its saves are retried one at a time, so one state the
+ * database rejects can't hold back everyone else's. A save that still
+ * fails stays queued (peek() and so hasPendingSave() keep reporting it)
+ * and is retried with exponential backoff, up to
+ * -Dbletheria.save.maxAttempts attempts (default 8); after that it waits
+ * for the player's next save, which starts a fresh set of attempts.
+ *
+ * A JVM shutdown hook flushes whatever is still pending. close() gives
+ * every remaining save one last try and reports the ones it couldn't write.
+ */
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class SaveQueue {
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    private static final long PARKED = Long.MAX_VALUE;   // retryAt of a save that ran out of attempts
+
+    // Writes one batch of states in a single transaction
+    public interface BatchWriter {
+        void write(List<PlayerState> batch) throws SQLException;
+    }
+
+    private final Map<Integer, PlayerState> pending = new ConcurrentHashMap<>();
+    private final Map<Integer, PlayerState> inFlight = new ConcurrentHashMap<>(); // being written
+    private final Map<Integer, Integer> attempts = new ConcurrentHashMap<>();  // failed tries per user
+    private final Map<Integer, Long> retryAt = new ConcurrentHashMap<>();      // backoff per user
+    private final BatchWriter writer;
+    private final long flushIntervalMillis;
+    private final int maxAttempts;
+    private final Thread flusher;
+    private final Thread shutdownHook;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wake = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private long requestedRound = 0;   // bumped by flush() callers
+    private long completedRound = 0;   // bumped by the writer after each pass
+    private volatile boolean running = true;
+
+    public SaveQueue(BatchWriter writer, long flushIntervalMillis) {
+        this(writer, flushIntervalMillis, Integer.getInteger("bletheria.save.maxAttempts", 8));
+    }
+
+    public SaveQueue(BatchWriter writer, long flushIntervalMillis, int maxAttempts) {
+        this.writer = writer;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxAttempts = maxAttempts;
+        this.flusher = new Thread(this::runFlusher, "bletheria-save-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+        this.shutdownHook = new Thread(this::close, "bletheria-save-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    // Records the latest state for a user; replaces any unwritten older one
+    public void enqueue(PlayerState state) {
+        pending.merge(state.userId, state, (older, newer) -> newer.withEarlierAdds(older));
+        if (!attempts.isEmpty()) {
+            // a newer save gets a fresh set of attempts
+            attempts.remove(state.userId);
+            retryAt.remove(state.userId);
+        }
+    }
+
+    // Latest unwritten state for a user, so reads see their own writes
+    public PlayerState peek(int userId) {
+        PlayerState state = pending.get(userId);
+        return state != null ? state : inFlight.get(userId);
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Blocks until everything enqueued before this call has been written
+     * (or failed and is waiting for a retry).
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            long target = ++requestedRound;
+            wake.signal();
+            while (completedRound < target && flusher.isAlive()) {
+                flushed.await(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stops the writer after a final flush
+    public void close() {
+        if (!running) return;
+        flush();
+        running = false;
+        flusher.interrupt();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException alreadyShuttingDown) {
+            // called from the hook itself
+        }
+        writeOnce(true); // anything that slipped in during the last pass, and one last try for failed saves
+        if (!pending.isEmpty()) {
+            System.out.println("Could not write the saved games of users " + pending.keySet() + "; they are lost.");
+        }
+    }
+
+    private void runFlusher() {
+        while (running) {
+            long round;
+            lock.lock();
+            try {
+                if (requestedRound == completedRound) {
+                    wake.await(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+                round = requestedRound;
+            } catch (InterruptedException e) {
+                if (!running) return;
+                continue;
+            } finally {
+                lock.unlock();
+            }
+
+            writeOnce(false);
+
+            lock.lock();
+            try {
+                completedRound = Math.max(completedRound, round);
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    //takes the pending snapshots (except those backing off, unless forced) and writes them as one batch
+    private synchronized void writeOnce(boolean force) {
+        if (pending.isEmpty()) return;
+
+        long now = System.currentTimeMillis();
+        List<PlayerState> batch = new ArrayList<>(pending.size());
+        for (Integer userId : new ArrayList<>(pending.keySet())) {
+            PlayerState state = pending.get(userId);
+            if (state == null) continue;
+            if (!force && !retryAt.isEmpty() && retryAt.getOrDefault(userId, 0L) > now) continue;
+            inFlight.put(userId, state);       // visible to peek() before it leaves pending
+            if (pending.remove(userId, state)) {
+                batch.add(state);
+            } else {
+                inFlight.remove(userId, state); // superseded; the newer one goes next round
+            }
+        }
+        if (batch.isEmpty()) return;
+        try {
+            writer.write(batch);
+            succeeded(batch);
+        } catch (SQLException | RuntimeException e) {
+            if (batch.size() == 1) {
+                failed(batch.get(0), e);
+            } else {
+                // find the saves that fail on their own; the rest go through now
+                for (PlayerState state : batch) {
+                    try {
+                        writer.write(List.of(state));
+                        succeeded(List.of(state));
+                    } catch (SQLException | RuntimeException alone) {
+                        failed(state, alone);
+                    }
+                }
+            }
+        } finally {
+            for (PlayerState state : batch) {
+                inFlight.remove(state.userId, state);
+            }
+        }
+    }
+
+    private void succeeded(List<PlayerState> written) {
+        if (attempts.isEmpty()) return;
+        for (PlayerState state : written) {
+            attempts.remove(state.userId);
+            retryAt.remove(state.userId);
+        }
+    }
+
+    //puts a failed save back (unless a newer one arrived meanwhile) and schedules its retry
+    private void failed(PlayerState state, Exception e) {
+        pending.merge(state.userId, state, (newer, failedState) -> newer.withEarlierAdds(failedState));
+        int attempt = attempts.merge(state.userId, 1, Integer::sum);
+        if (attempt >= maxAttempts) {
+            retryAt.put(state.userId, PARKED);
+            System.out.println("Error writing the saved game of user " + state.userId + "; gave up after "
+                               + attempt + " attempts until their next save: " + e.getMessage());
+            return;
+        }
+        long backoff = Math.min(flushIntervalMillis << Math.min(attempt, 20), MAX_BACKOFF_MILLIS);
+        retryAt.put(state.userId, System.currentTimeMillis() + backoff);
+        System.out.println("Error writing the saved game of user " + state.userId + " (attempt " + attempt
+                           + ", retrying in " + backoff + " ms): " + e.getMessage());
+    }
+}
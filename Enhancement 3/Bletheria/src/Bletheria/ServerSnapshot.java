@@ -0,0 +1,222 @@
+package Bletheria;
+
+/**
+ * ServerSnapshot writes every live session to one file at shutdown and
+ * brings them all back at startup, so a deploy doesn't force every
+ * player through login and a per-user loadPlayerState again.
+ *
+ * Writing asks each session for its state on its own mailbox (the
+ * session is checkpointed in the same step, so the snapshot never runs
+ * ahead of the store). It also records which shared-world pedestals are
+ * empty. Front ends should stop submitting commands first so the
+ * snapshot is consistent across sessions.
+ *
+ * File layout (version 1), big-endian:
+ *     int   MAGIC, int VERSION, long written-at millis
+ *     int   room count,    then per room: string name
+ *     int   session count, then per session: int user id, string
+ *           username, string room, string attribute, short item count,
+ *           strings items
+ *     int   CRC-32 of everything before it
+ * Strings are a short byte length followed by UTF-8.
+ *
+ * The file is memory-mapped to read it, checked against its CRC, and
+ * deleted once restored, so an old snapshot can never be restored over
+ * newer saves after a crash.
+ */
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+
+public final class ServerSnapshot {
+    private static final int MAGIC = 0x424C534E;   // "BLSN"
+    private static final int VERSION = 1;
+    private static final long CAPTURE_TIMEOUT_MS = Long.getLong("bletheria.snapshot.captureMillis", 5000L);
+
+    private record Captured(String username, PlayerState state) { }
+
+    private ServerSnapshot() { }
+
+    // Default location, -Dbletheria.snapshot.file
+    public static Path defaultFile() {
+        return Path.of(System.getProperty("bletheria.snapshot.file", "bletheria.snapshot"));
+    }
+
+    /**
+     * Captures every registered session (and the shared world, if any)
+     * into the file. Sessions that don't answer in time are left out;
+     * they are checkpointed anyway and just log in again.
+     *
+     * @return the number of sessions written
+     */
+    public static int write(Path file, SessionRegistry registry, WorldMap sharedWorld) throws IOException {
+        Map<GameSession, CompletableFuture<PlayerState>> pending = new LinkedHashMap<>();
+        for (GameSession session : registry.all()) {
+            pending.put(session, session.capture());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+
+        List<String> emptyPedestals = new ArrayList<>();
+        if (sharedWorld != null) {
+            for (String name : new TreeSet<>(sharedWorld.getAllRoomNames())) {
+                Room room = sharedWorld.getRoom(name);
+                if (room.getSpawnItem() != null && room.getItem() == null) {
+                    emptyPedestals.add(name);
+                }
+            }
+        }
+        out.writeInt(emptyPedestals.size());
+        for (String name : emptyPedestals) {
+            writeString(out, name);
+        }
+
+        List<Captured> captured = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CAPTURE_TIMEOUT_MS);
+        for (Map.Entry<GameSession, CompletableFuture<PlayerState>> entry : pending.entrySet()) {
+            try {
+                long wait = Math.max(0, deadline - System.nanoTime());
+                PlayerState state = entry.getValue().get(wait, TimeUnit.NANOSECONDS);
+                if (state != null) {
+                    captured.add(new Captured(entry.getKey().getUsername(), state));
+                }
+            } catch (ExecutionException | TimeoutException e) {
+                System.out.println("Snapshot skipped " + entry.getKey().getUsername() + ": " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while capturing sessions", e);
+            }
+        }
+        out.writeInt(captured.size());
+        for (Captured entry : captured) {
+            PlayerState state = entry.state();
+            out.writeInt(state.userId);
+            writeString(out, entry.username());
+            writeString(out, state.currentRoom);
+            writeString(out, state.attribute);
+            out.writeShort(state.inventory.size());
+            for (String item : state.inventory) {
+                writeString(out, item);
+            }
+        }
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        // Write beside the target and rename, so a crash never leaves half a snapshot
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return captured.size();
+    }
+
+    /**
+     * Restores the sessions in the file into the registry and empties the
+     * recorded pedestals of the shared world (their respawn timers start
+     * over). Does nothing if there is no snapshot; a damaged one is
+     * reported and ignored, and players then log in as usual.
+     *
+     * @return the number of sessions restored
+     */
+    public static int restore(Path file, SessionRegistry registry, StateStore db, WorldMap sharedWorld)
+            throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int restored = 0;
+        try {
+            if (!isValid(buf)) {
+                System.out.println("Ignoring damaged server snapshot " + file);
+                return 0;
+            }
+            buf.position(16);   // magic, version, timestamp
+            int rooms = buf.getInt();
+            for (int i = 0; i < rooms; i++) {
+                String name = readString(buf);
+                Room room = sharedWorld == null ? null : sharedWorld.getRoom(name);
+                if (room != null && room.getItem() != null) {
+                    sharedWorld.claimItem(room, room.getItem());
+                }
+            }
+            int sessions = buf.getInt();
+            for (int i = 0; i < sessions; i++) {
+                PlayerState state = new PlayerState();
+                state.userId = buf.getInt();
+                String username = readString(buf);
+                state.currentRoom = readString(buf);
+                state.attribute = readString(buf);
+                int items = buf.getShort() & 0xFFFF;
+                for (int j = 0; j < items; j++) {
+                    state.inventory.add(readString(buf));
+                }
+                if (registry.get(state.userId) != null) {
+                    continue;   // already back (e.g. logged in while restoring)
+                }
+                WorldMap world = sharedWorld != null ? sharedWorld : new WorldMap();
+                Player player = GameEngine.restorePlayer(username, state.userId, state, world);
+                GameEngine engine = new GameEngine(world, player, new EndingResolver(), db);
+                registry.register(new GameSession(engine, db));
+                restored++;
+            }
+        } finally {
+            Files.deleteIfExists(file);   // one use only; see the class comment
+        }
+        return restored;
+    }
+
+    //checks magic, version and the trailing CRC
+    private static boolean isValid(ByteBuffer buf) {
+        int size = buf.limit();
+        if (size < 24 || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.slice(0, size - 4));
+        return (int) crc.getValue() == buf.getInt(size - 4);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] utf8 = new byte[buf.getShort() & 0xFFFF];
+        buf.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,85 @@
+package Bletheria;
+
+/**
+ * SessionMailbox is a single-consumer, multi-producer queue of work for one
+ * game session (an "actor" mailbox).
+ *
+ * Any thread may post work, but only one task at a time ever drains the
+ * mailbox, so everything posted to it runs in order and confined to one
+ * logical thread. A session with an empty mailbox holds no thread at all;
+ * it is only scheduled on the shared executor when work arrives.
+ */
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SessionMailbox {
+
+    // Max tasks run per scheduling, so one busy session can't starve the others
+    private static final int DRAIN_BATCH = 64;
+
+    // Shared pool sized to the machine, used when no executor is supplied
+    private static final ExecutorService SHARED_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            r -> {
+                Thread t = new Thread(r, "bletheria-session");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>(); // lock-free MPSC queue
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);    // true while a drain is queued/running
+    private final Executor executor;
+
+    public SessionMailbox() {
+        this(SHARED_EXECUTOR);
+    }
+
+    public SessionMailbox(Executor executor) {
+        this.executor = executor;
+    }
+
+    // Adds work to the mailbox; safe to call from any thread
+    public void post(Runnable task) {
+        queue.offer(task);
+        trySchedule();
+    }
+
+    // True when nothing is waiting or running for this session
+    public boolean isIdle() {
+        return !scheduled.get() && queue.isEmpty();
+    }
+
+    // Only the caller that flips the flag gets to schedule a drain
+    private void trySchedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    //runs queued tasks in order on the current executor thread
+    private void drain() {
+        try {
+            Runnable task;
+            int ran = 0;
+            while (ran < DRAIN_BATCH && (task = queue.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.out.println("Session task failed: " + e.getMessage());
+                }
+                ran++;
+            }
+        } finally {
+            scheduled.set(false);
+        }
+
+        // Work may have arrived after the last poll, or we hit the batch limit
+        if (!queue.isEmpty()) {
+            trySchedule();
+        }
+    }
+}
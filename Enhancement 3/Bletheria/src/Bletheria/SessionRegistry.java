@@ -0,0 +1,135 @@
+package Bletheria;
+
+/**
+ * SessionRegistry tracks every connected GameSession by user ID and owns
+ * the timers that act on them.
+ *
+ * Each registered session gets its own timers on the shared TimingWheel:
+ * - an idle timeout that passivates the session once it has been quiet
+ *   past the threshold, so only recently active players stay in memory
+ * - a periodic autosave, which only writes sessions that have changed
+ * - scripted world events (the temple bell warning after a while)
+ *
+ * It also owns the RoomBroadcaster, so every registered session can see
+ * and talk to the other players in its room.
+ *
+ * On a planned restart, shutdown(snapshotFile, world) writes a
+ * ServerSnapshot of every session first, and restore() brings them back
+ * on the next start without anyone logging in again.
+ */
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class SessionRegistry {
+    private static final String TEMPLE_BELL =
+        "A distant bell tolls from the Demon High Temple. Nozgorath grows impatient.";
+
+    private final Map<Integer, GameSession> sessions = new ConcurrentHashMap<>();
+    private final TimingWheel timers;
+    private final RoomBroadcaster rooms;
+    private final long idleMillis;
+    private final long autosaveMillis;
+    private final long templeEventMillis;
+
+    public SessionRegistry() {
+        this(new TimingWheel(),
+             Long.getLong("bletheria.session.idleMillis", TimeUnit.MINUTES.toMillis(10)),
+             AutosavePolicy.getDefault().everyMillis(),
+             Long.getLong("bletheria.events.templeMillis", TimeUnit.MINUTES.toMillis(15)));
+    }
+
+    public SessionRegistry(TimingWheel timers, long idleMillis, long autosaveMillis, long templeEventMillis) {
+        this.timers = timers;
+        this.idleMillis = idleMillis;
+        this.autosaveMillis = autosaveMillis;
+        this.templeEventMillis = templeEventMillis;
+        this.rooms = new RoomBroadcaster(timers, 100, TimeUnit.MILLISECONDS);
+    }
+
+    public TimingWheel getTimers() { return timers; }
+    public RoomBroadcaster getRooms() { return rooms; }
+
+    public void register(GameSession session) {
+        sessions.put(session.getUserId(), session);
+        session.attachPresence(rooms);
+        scheduleIdleCheck(session, idleMillis);
+        if (autosaveMillis > 0) {
+            session.track(timers.scheduleAtFixedRate(session::autosave, autosaveMillis, TimeUnit.MILLISECONDS));
+        }
+        if (templeEventMillis > 0) {
+            session.track(timers.schedule(() -> session.notify(TEMPLE_BELL),
+                                          templeEventMillis, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    public GameSession get(int userId) {
+        return sessions.get(userId);
+    }
+
+    public void remove(int userId) {
+        GameSession session = sessions.remove(userId);
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    public Collection<GameSession> all() {
+        return sessions.values();
+    }
+
+    // Snapshots every session for a warm restart, then shuts down
+    public void shutdown(Path snapshotFile, WorldMap sharedWorld) {
+        try {
+            int written = ServerSnapshot.write(snapshotFile, this, sharedWorld);
+            System.out.println("Saved " + written + " sessions for restart.");
+        } catch (IOException e) {
+            System.out.println("Could not write server snapshot: " + e.getMessage());
+        }
+        shutdown();
+    }
+
+    // Re-registers the sessions from a snapshot written at the last shutdown
+    public int restore(Path snapshotFile, StateStore db, WorldMap sharedWorld) {
+        try {
+            return ServerSnapshot.restore(snapshotFile, this, db, sharedWorld);
+        } catch (IOException e) {
+            System.out.println("Could not restore server snapshot: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    public void shutdown() {
+        for (GameSession session : sessions.values()) {
+            session.close();
+        }
+        rooms.shutdown();
+        timers.shutdown();
+    }
+
+    /**
+     * One idle timer per session. Instead of rescheduling on every command,
+     * the timer checks lastActive when it fires and re-arms itself for the
+     * remaining time if the player has been active since.
+     */
+    private void scheduleIdleCheck(GameSession session, long delayMillis) {
+        session.track(timers.schedule(() -> checkIdle(session), delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private void checkIdle(GameSession session) {
+        if (!session.isOpen()) {
+            sessions.remove(session.getUserId(), session);
+            return;
+        }
+        long quietFor = System.currentTimeMillis() - session.getLastActive();
+        if (quietFor >= idleMillis && session.isIdle()) {
+            session.passivate();
+            scheduleIdleCheck(session, idleMillis);
+        } else {
+            scheduleIdleCheck(session, Math.max(1, idleMillis - quietFor));
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package Bletheria;
+
+/**
+ * SessionTokens issues and checks signed, expiring session tokens so a
+ * returning client can skip the password (and its slow hash) on reconnect.
+ *
+ * A token is
+ *     base64url("1|<user id>|<expires, epoch seconds>|<nonce>|<username>")
+ *     + "." + base64url(HMAC-SHA256 of that first part)
+ * Checking one is an HMAC over a few dozen bytes and a clock comparison:
+ * no database lookup and no password hash. Tokens can be revoked (the
+ * game does on 'exit'); revoked nonces are kept until the token would have
+ * expired anyway.
+ *
+ * The signing key comes from -Dbletheria.token.secret (hex, at least 32
+ * bytes). Without it, a random key is made on the first run and kept in
+ * -Dbletheria.token.keyFile (default bletheria-token.key, readable by the
+ * owner only), since the console game is one process per play session and
+ * a token has to outlive it. Revocations must outlive it too, so they are
+ * appended to -Dbletheria.token.revokedFile (default
+ * bletheria-revoked-tokens.txt). If the key can't be saved, tokens would
+ * die with the process, survivesRestart() is false and the game doesn't
+ * hand any out. Bletheria.main checks the key with secretProblem() before
+ * starting. -Dbletheria.token.ttlMinutes sets the lifetime (default 24
+ * hours).
+ */
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public class SessionTokens {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_KEY_BYTES = 32;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private static final String SECRET_PROPERTY = "bletheria.token.secret";
+
+    private static SessionTokens defaultInstance;   // made on first use, after main has checked the secret
+
+    // Who a valid token was issued to
+    public record Claims(int userId, String username, long expiresAt) { }
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final ThreadLocal<Mac> macs;    // Mac isn't thread-safe
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>(); // nonce -> expiry
+    private final Path revokedFile;         // null: revocations last until restart
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public SessionTokens(byte[] secret, long ttlSeconds) {
+        this(secret, ttlSeconds, null);
+    }
+
+    // Also keeps revocations in revokedFile, reloading the unexpired ones now
+    public SessionTokens(byte[] secret, long ttlSeconds, Path revokedFile) {
+        if (secret.length < MIN_KEY_BYTES) {
+            throw new IllegalArgumentException("Token secret must be at least " + MIN_KEY_BYTES + " bytes");
+        }
+        this.key = new SecretKeySpec(secret.clone(), ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.revokedFile = revokedFile;
+        if (revokedFile != null) {
+            loadRevoked();
+        }
+    }
+
+    // Shared instance configured by the -Dbletheria.token.* properties
+    public static synchronized SessionTokens getDefault() {
+        if (defaultInstance == null) {
+            long ttl = TimeUnit.MINUTES.toSeconds(Long.getLong("bletheria.token.ttlMinutes", 24 * 60));
+            byte[] key = defaultKey();
+            Path revokedFile = key == null
+                ? null
+                : Path.of(System.getProperty("bletheria.token.revokedFile", "bletheria-revoked-tokens.txt"));
+            if (key == null) {
+                key = new byte[MIN_KEY_BYTES];   // this process only
+                new SecureRandom().nextBytes(key);
+            }
+            defaultInstance = new SessionTokens(key, ttl, revokedFile);
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Checks -Dbletheria.token.secret, or the saved key file when no secret
+     * is set, without creating the default instance.
+     * @return what is wrong with it, or null if it is usable or not there yet
+     */
+    public static String secretProblem() {
+        if (secretConfigured()) {
+            return keyProblem(System.getProperty(SECRET_PROPERTY).trim(), "-D" + SECRET_PROPERTY);
+        }
+        Path keyFile = keyFile();
+        if (!Files.exists(keyFile)) {
+            return null;
+        }
+        try {
+            String problem = keyProblem(Files.readString(keyFile, StandardCharsets.US_ASCII).trim(),
+                                        "The token key in " + keyFile);
+            return problem == null ? null : problem + " Delete the file to make a new key.";
+        } catch (IOException e) {
+            return "Can't read the token key in " + keyFile + ": " + e.getMessage();
+        }
+    }
+
+    // True if tokens from this instance still work after a restart
+    public boolean survivesRestart() {
+        return revokedFile != null;
+    }
+
+    // Token for a user who just logged in or registered
+    public String issue(int userId, String username) {
+        byte[] nonce = new byte[8];
+        random.nextBytes(nonce);
+        long expiresAt = System.currentTimeMillis() / 1000 + ttlSeconds;
+        String payload = "1|" + userId + "|" + expiresAt + "|" + PasswordHasher.toHex(nonce) + "|" + username;
+        String body = ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        issued.incrementAndGet();
+        return body + "." + ENCODER.encodeToString(sign(body));
+    }
+
+    /**
+     * Checks a token's signature, expiry and revocation.
+     * @return who it belongs to, or null if it isn't valid
+     */
+    public Claims verify(String token) {
+        String[] fields = parse(token);
+        if (fields == null) {
+            rejected.incrementAndGet();
+            return null;
+        }
+        long expiresAt = Long.parseLong(fields[2]);
+        if (expiresAt <= System.currentTimeMillis() / 1000 || revoked.containsKey(fields[3])) {
+            rejected.incrementAndGet();
+            return null;
+        }
+        accepted.incrementAndGet();
+        return new Claims(Integer.parseInt(fields[1]), fields[4], expiresAt);
+    }
+
+    // Stops a token from being accepted again (logout)
+    public void revoke(String token) {
+        String[] fields = parse(token);
+        if (fields == null) {
+            return;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        revoked.values().removeIf(expiry -> expiry <= now);   // expired ones fail verify anyway
+        revoked.put(fields[3], Long.parseLong(fields[2]));
+        if (revokedFile != null) {
+            appendRevoked(fields[3] + " " + fields[2] + "\n");
+        }
+    }
+
+    // Metrics
+    public long getIssued() { return issued.get(); }
+    public long getAccepted() { return accepted.get(); }
+    public long getRejected() { return rejected.get(); }
+
+    //returns the payload fields of a well-formed, correctly signed token, or null
+    private String[] parse(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot != token.lastIndexOf('.')) {
+            return null;
+        }
+        String body = token.substring(0, dot);
+        try {
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, sign(body))) {   // constant time
+                return null;
+            }
+            String[] fields = new String(DECODER.decode(body), StandardCharsets.UTF_8).split("\\|", 5);
+            if (fields.length != 5 || !fields[0].equals("1")) {
+                return null;
+            }
+            Integer.parseInt(fields[1]);
+            Long.parseLong(fields[2]);
+            return fields;
+        } catch (IllegalArgumentException e) {   // bad base64 or numbers
+            return null;
+        }
+    }
+
+    private byte[] sign(String body) {
+        return macs.get().doFinal(body.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+    }
+
+    //---- revocation file: one "<nonce> <expires>" line per revoked token
+
+    private void loadRevoked() {
+        if (!Files.exists(revokedFile)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(revokedFile, StandardCharsets.UTF_8);
+            long now = System.currentTimeMillis() / 1000;
+            StringBuilder live = new StringBuilder();
+            for (String line : lines) {
+                String[] parts = line.trim().split(" ");
+                if (parts.length != 2 || !parts[1].matches("\\d+")) {
+                    continue;
+                }
+                long expiresAt = Long.parseLong(parts[1]);
+                if (expiresAt > now) {
+                    revoked.put(parts[0], expiresAt);
+                    live.append(parts[0]).append(' ').append(expiresAt).append('\n');
+                }
+            }
+            if (revoked.size() < lines.size()) {
+                Files.writeString(revokedFile, live, StandardCharsets.UTF_8);   // drop expired lines
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading revoked tokens: " + e.getMessage());
+        }
+    }
+
+    private synchronized void appendRevoked(String line) {
+        try {
+            Files.writeString(revokedFile, line, StandardCharsets.UTF_8,
+                              StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.out.println("Error saving revoked token: " + e.getMessage());
+        }
+    }
+
+    //---- signing key
+
+    private static boolean secretConfigured() {
+        String hex = System.getProperty(SECRET_PROPERTY);
+        return hex != null && !hex.isBlank();
+    }
+
+    private static Path keyFile() {
+        return Path.of(System.getProperty("bletheria.token.keyFile", "bletheria-token.key"));
+    }
+
+    //what's wrong with a hex key from 'source', or null if it's usable
+    private static String keyProblem(String hex, String source) {
+        if (!hex.matches("([0-9a-fA-F]{2})+")) {
+            return source + " must be an even number of hex digits.";
+        }
+        if (hex.length() / 2 < MIN_KEY_BYTES) {
+            return source + " must be at least " + MIN_KEY_BYTES + " bytes ("
+                   + MIN_KEY_BYTES * 2 + " hex digits); it is " + hex.length() / 2 + ".";
+        }
+        return null;
+    }
+
+    //the configured or saved key, or null if a new one couldn't be saved
+    private static byte[] defaultKey() {
+        String problem = secretProblem();
+        if (problem != null) {
+            throw new IllegalStateException(problem);
+        }
+        if (secretConfigured()) {
+            return PasswordHasher.fromHex(System.getProperty(SECRET_PROPERTY).trim());
+        }
+        Path keyFile = keyFile();
+        try {
+            return loadOrCreateKey(keyFile);
+        } catch (IOException e) {
+            System.out.println("Error saving the token key to " + keyFile + " (" + e
+                               + "); session tokens are turned off.");
+            return null;
+        }
+    }
+
+    // Reads the key saved in the file, first making one if there is none
+    static byte[] loadOrCreateKey(Path keyFile) throws IOException {
+        if (Files.exists(keyFile)) {
+            return PasswordHasher.fromHex(Files.readString(keyFile, StandardCharsets.US_ASCII).trim());
+        }
+        byte[] key = new byte[MIN_KEY_BYTES];
+        new SecureRandom().nextBytes(key);
+        try {
+            Files.createFile(keyFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(keyFile);   // not a POSIX file system
+        }
+        Files.writeString(keyFile, PasswordHasher.toHex(key) + "\n", StandardCharsets.US_ASCII);
+        return key;
+    }
+}
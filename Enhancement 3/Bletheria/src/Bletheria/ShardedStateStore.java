@@ -0,0 +1,181 @@
+package Bletheria;
+
+/**
+ * ShardedStateStore spreads users over several SQLite files so saves are
+ * not limited to SQLite's one writer per file.
+ *
+ * Each shard is a full DatabaseManager on its own file, with its own
+ * connection pool and its own write-behind writer thread, so shards
+ * commit in parallel. A user lives on shard hash(user ID) mod N. The
+ * UserDirectory assigns user IDs and maps usernames to them, so a login
+ * goes to one shard only. Everything about a user (credentials, save,
+ * slots) is on that shard.
+ *
+ * Select it with -Dbletheria.store=sharded; -Dbletheria.db.shards sets N
+ * (default 4). Files are bletheria-directory.db and bletheria-shard-<i>.db.
+ * The shard count is fixed once data exists (see UserDirectory); to
+ * change it, export with BulkTransfer and import into a new set of files.
+ *
+ * Opening the store also settles directory rows a crash left pending
+ * between reserving a username and storing the account on its shard:
+ * rows whose account exists are confirmed, the rest are released.
+ */
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class ShardedStateStore implements StateStore {
+    private final UserDirectory directory;
+    private final DatabaseManager[] shards;
+    private final PasswordHasher hasher = new PasswordHasher();
+
+    public ShardedStateStore() {
+        this(Integer.getInteger("bletheria.db.shards", 4));
+    }
+
+    public ShardedStateStore(int shardCount) {
+        this("jdbc:sqlite:bletheria", shardCount);
+    }
+
+    // Files are <urlPrefix>-directory.db and <urlPrefix>-shard-<i>.db
+    public ShardedStateStore(String urlPrefix, int shardCount) {
+        this.directory = new UserDirectory(urlPrefix + "-directory.db", shardCount);
+        this.shards = new DatabaseManager[shardCount];
+        int poolSize = Integer.getInteger("bletheria.db.shardPoolSize", 2);
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new DatabaseManager(urlPrefix + "-shard-" + i + ".db", poolSize);
+        }
+        settlePendingReservations();
+    }
+
+    //confirms or releases directory rows an interrupted registration or import left pending
+    private void settlePendingReservations() {
+        int released = 0;
+        List<Integer> confirmed = new ArrayList<>();
+        for (int userId : directory.pending()) {
+            try {
+                if (shardFor(userId).hasUser(userId)) {
+                    confirmed.add(userId);
+                } else {
+                    directory.release(userId);
+                    released++;
+                }
+            } catch (SQLException e) {
+                // leave it pending and look again on the next open
+                System.out.println("Error checking user " + userId + ": " + e.getMessage());
+            }
+        }
+        directory.confirm(confirmed.stream().mapToInt(Integer::intValue).toArray());
+        if (released > 0) {
+            System.out.println("Released " + released + " username(s) left reserved by an interrupted registration.");
+        }
+    }
+
+    // The shard that holds a user
+    public DatabaseManager shardFor(int userId) {
+        // mix the bits first so consecutive IDs don't just round-robin in lockstep
+        int h = userId * 0x9E3779B9;
+        h ^= h >>> 16;
+        return shards[Math.floorMod(h, shards.length)];
+    }
+
+    public int getShardCount() { return shards.length; }
+
+    UserDirectory getDirectory() { return directory; }
+
+    DatabaseManager getShard(int index) { return shards[index]; }
+
+    @Override
+    public int registerUser(String username, String plainPassword) {
+        String passwordHash = hasher.hash(plainPassword);   // slow; before touching any database
+        int userId = directory.reserve(username);
+        if (userId < 0) {
+            return -1;
+        }
+        if (!shardFor(userId).insertUser(userId, username, passwordHash)) {
+            directory.release(userId);
+            return -1;
+        }
+        directory.confirm(userId);
+        return userId;
+    }
+
+    @Override
+    public int authenticateUser(String username, String plainPassword) {
+        int userId = directory.lookup(username);
+        return userId < 0 ? -1 : shardFor(userId).authenticateUser(username, plainPassword);
+    }
+
+    @Override
+    public void savePlayerState(Player player) {
+        shardFor(player.getUserId()).savePlayerState(player);
+    }
+
+    @Override
+    public PlayerState loadPlayerState(int userId) {
+        return shardFor(userId).loadPlayerState(userId);
+    }
+
+    @Override
+    public void forEachPlayerState(Consumer<PlayerState> action) {
+        for (DatabaseManager shard : shards) {
+            shard.forEachPlayerState(action);
+        }
+    }
+
+    @Override
+    public boolean supportsSlots() { return true; }
+
+    @Override
+    public long saveToSlot(Player player, String slot) {
+        return shardFor(player.getUserId()).saveToSlot(player, slot);
+    }
+
+    @Override
+    public PlayerState loadFromSlot(int userId, String slot, long version) {
+        return shardFor(userId).loadFromSlot(userId, slot, version);
+    }
+
+    @Override
+    public List<SaveHistory.Entry> listSlots(int userId) {
+        return shardFor(userId).listSlots(userId);
+    }
+
+    // Number of players who have collected an item, over all shards
+    public int countPlayersWithItem(String item) {
+        int total = 0;
+        for (DatabaseManager shard : shards) {
+            total += shard.countPlayersWithItem(item);
+        }
+        return total;
+    }
+
+    @Override
+    public void flushSaves() {
+        for (DatabaseManager shard : shards) {
+            shard.flushSaves();
+        }
+    }
+
+    @Override
+    public boolean hasPendingSave(int userId) {
+        return shardFor(userId).hasPendingSave(userId);
+    }
+
+    @Override
+    public void close() {
+        List<RuntimeException> failures = new ArrayList<>();
+        for (DatabaseManager shard : shards) {
+            try {
+                shard.close();
+            } catch (RuntimeException e) {
+                failures.add(e);
+            }
+        }
+        directory.close();
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+    }
+}
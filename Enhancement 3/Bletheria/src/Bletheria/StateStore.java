@@ -0,0 +1,99 @@
+package Bletheria;
+
+/**
+ * StateStore is everything the game needs from persistent storage:
+ * user accounts, credentials and saved player state.
+ *
+ * DatabaseManager (SQLite) is the default durable implementation,
+ * ShardedStateStore spreads users over several SQLite files for write
+ * concurrency, and JournalStateStore is a faster append-only one for
+ * when only the latest state per user matters. The InMemoryStateStore keeps everything in
+ * concurrent maps for benchmarks, bots and ephemeral servers that don't
+ * want a bletheria.db file. Which one the console game uses is chosen
+ * with -Dbletheria.store (sqlite, sharded, journal or memory), and open()
+ * wraps it in a StatsStateStore for the live dashboard counters unless
+ * -Dbletheria.stats=false.
+ *
+ * Conventions every implementation follows:
+ * - registerUser/authenticateUser return the user ID, or -1 on failure
+ *   (duplicate username, unknown user, wrong password, storage error)
+ * - both may be slow (password hashing) and are safe to call from any
+ *   thread; AuthService runs them off the game threads
+ * - savePlayerState may return before the state is durable, but a
+ *   following loadPlayerState for the same user must see it
+ * - loadPlayerState returns null when the user has no save
+ * - a save that fails either throws, leaving the player dirty, or stays
+ *   queued for a retry and is reported by hasPendingSave
+ * - named save slots with history are optional: DatabaseManager and
+ *   ShardedStateStore override supportsSlots() and the slot methods;
+ *   JournalStateStore and InMemoryStateStore keep the defaults, so
+ *   'save <slot>', 'history' and 'restore' tell the player slots are not
+ *   available there
+ */
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface StateStore extends AutoCloseable {
+
+    static StateStore open() {
+        StateStore store = openBackend();
+        boolean stats = Boolean.parseBoolean(System.getProperty("bletheria.stats", "true"));
+        return stats ? new StatsStateStore(store) : store;
+    }
+
+    // The backend named by -Dbletheria.store, without the stats wrapper (for tools like BulkTransfer)
+    static StateStore openBackend() {
+        String kind = System.getProperty("bletheria.store", "sqlite");
+        return switch (kind) {
+            case "memory" -> new InMemoryStateStore();
+            case "sharded" -> new ShardedStateStore();
+            case "journal" -> new JournalStateStore();
+            case "sqlite" -> new DatabaseManager();
+            default -> throw new IllegalArgumentException("Unknown bletheria.store: " + kind);
+        };
+    }
+
+    int registerUser(String username, String plainPassword);
+
+    int authenticateUser(String username, String plainPassword);
+
+    // Saves the player's current state and marks the player clean
+    void savePlayerState(Player player);
+
+    PlayerState loadPlayerState(int userId);
+
+    // Visits every user's latest saved state (full scan; for reconciling aggregates)
+    void forEachPlayerState(Consumer<PlayerState> action);
+
+    // Saves the player only if it changed since its last save; true if it did
+    default boolean checkpoint(Player player) {
+        if (!player.isDirty()) {
+            return false;
+        }
+        savePlayerState(player);
+        return true;
+    }
+
+    default boolean supportsSlots() { return false; }
+
+    // Saves the player and adds its state as the next version of a slot; -1 on failure
+    default long saveToSlot(Player player, String slot) { return -1; }
+
+    // One version of a slot (version <= 0: the latest), or null
+    default PlayerState loadFromSlot(int userId, String slot, long version) { return null; }
+
+    // Every kept slot version for the user
+    default List<SaveHistory.Entry> listSlots(int userId) { return List.of(); }
+
+    // Blocks until every save made so far is durable
+    default void flushSaves() { }
+
+    // True while a save for the user is queued, or was put back after failing to write
+    default boolean hasPendingSave(int userId) { return false; }
+
+    // Live dashboard counters, or null if this store doesn't keep them (see StatsStateStore)
+    default PlayerStats getStats() { return null; }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,122 @@
+package Bletheria;
+
+/**
+ * StatsStateStore wraps another StateStore and feeds every save into a
+ * PlayerStats, so dashboards stay current without querying the store.
+ *
+ * A background thread reconciles the stats against the wrapped store
+ * every -Dbletheria.stats.reconcileMillis (default 10 minutes; 0 turns
+ * it off); the first pass loads the counters. How many players the last
+ * pass had to correct is in getStats().getLastDrift(), not on the console
+ * the game is using. Everything else is passed straight through.
+ *
+ * StateStore.open() wraps whichever backend it opens in one of these
+ * (-Dbletheria.stats=false turns that off); the 'stats' command reads the
+ * counters through getStats().
+ */
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class StatsStateStore implements StateStore {
+    private final StateStore store;
+    private final PlayerStats stats;
+    private final ScheduledExecutorService reconciler;
+
+    public StatsStateStore(StateStore store) {
+        this(store, new PlayerStats(new EndingResolver()),
+             Long.getLong("bletheria.stats.reconcileMillis", TimeUnit.MINUTES.toMillis(10)));
+    }
+
+    public StatsStateStore(StateStore store, PlayerStats stats, long reconcileMillis) {
+        this.store = store;
+        this.stats = stats;
+        this.reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bletheria-stats-reconcile");
+            t.setDaemon(true);
+            return t;
+        });
+        // the first pass also loads the counters for players saved before startup
+        reconciler.execute(this::reconcile);
+        if (reconcileMillis > 0) {
+            reconciler.scheduleWithFixedDelay(this::reconcile, reconcileMillis, reconcileMillis,
+                                              TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public PlayerStats getStats() { return stats; }
+
+    @Override
+    public int registerUser(String username, String plainPassword) {
+        return store.registerUser(username, plainPassword);
+    }
+
+    @Override
+    public int authenticateUser(String username, String plainPassword) {
+        return store.authenticateUser(username, plainPassword);
+    }
+
+    @Override
+    public void savePlayerState(Player player) {
+        store.savePlayerState(player);
+        stats.record(PlayerState.of(player));
+    }
+
+    @Override
+    public PlayerState loadPlayerState(int userId) {
+        return store.loadPlayerState(userId);
+    }
+
+    @Override
+    public void forEachPlayerState(Consumer<PlayerState> action) {
+        store.forEachPlayerState(action);
+    }
+
+    @Override
+    public boolean supportsSlots() { return store.supportsSlots(); }
+
+    @Override
+    public long saveToSlot(Player player, String slot) {
+        long version = store.saveToSlot(player, slot);   // also saves the game
+        stats.record(PlayerState.of(player));
+        return version;
+    }
+
+    @Override
+    public PlayerState loadFromSlot(int userId, String slot, long version) {
+        return store.loadFromSlot(userId, slot, version);
+    }
+
+    @Override
+    public List<SaveHistory.Entry> listSlots(int userId) {
+        return store.listSlots(userId);
+    }
+
+    @Override
+    public void flushSaves() {
+        store.flushSaves();
+    }
+
+    @Override
+    public boolean hasPendingSave(int userId) {
+        return store.hasPendingSave(userId);
+    }
+
+    @Override
+    public void close() {
+        reconciler.shutdownNow();
+        store.close();
+    }
+
+    //runs in the background, so drift is left in stats.getLastDrift() rather than printed over the game
+    private void reconcile() {
+        try {
+            stats.reconcile(store);
+        } catch (RuntimeException e) {
+            System.out.println("Player stats reconcile failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package Bletheria;
+
+/**
+ * TimingWheel is a hierarchical timing-wheel scheduler for timed world
+ * events (autosave intervals, idle timeouts, scripted room events).
+ *
+ * Time is divided into ticks. Level 0 has one slot per tick for the next
+ * 256 ticks; each higher level has 256 slots that each cover a whole turn
+ * of the level below. Timers further out sit in a coarse slot and are
+ * cascaded down as their time approaches, so inserting and cancelling are
+ * O(1) no matter how many timers are pending. This is what lets every
+ * session own its own timers, which a heap-based scheduler can't do cheaply.
+ *
+ * Any thread may schedule or cancel. A single ticker thread owns the wheel
+ * and runs expired tasks, so tasks must be short; session work should be
+ * posted to the session's mailbox rather than run here.
+ */
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimingWheel {
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;   // 256 slots per level
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;               // 2^32 ticks of range
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickNanos;
+    private final Bucket[][] wheel = new Bucket[LEVELS][SLOTS];
+    private final Queue<Timer> additions = new ConcurrentLinkedQueue<>();
+    private final Queue<Timer> cancellations = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Thread ticker;
+    private final long startNanos;
+    private volatile boolean running = true;
+    private long currentTick = 0;                      // owned by the ticker thread
+
+    public TimingWheel() {
+        this(100, TimeUnit.MILLISECONDS);
+    }
+
+    public TimingWheel(long tickDuration, TimeUnit unit) {
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheel[level][slot] = new Bucket();
+            }
+        }
+        this.startNanos = System.nanoTime();
+        this.ticker = new Thread(this::runTicker, "bletheria-timer");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * A scheduled task. Cancelling is O(1) and safe from any thread.
+     */
+    public final class Timer {
+        private final Runnable task;
+        private final long periodTicks;                // 0 for one-shot timers
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long deadline;                         // absolute tick
+        private Bucket bucket;                         // set only by the ticker thread
+        private Timer prev;
+        private Timer next;
+
+        private Timer(Runnable task, long deadline, long periodTicks) {
+            this.task = task;
+            this.deadline = deadline;
+            this.periodTicks = periodTicks;
+        }
+
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            cancellations.offer(this);
+            return true;
+        }
+
+        public boolean isCancelled() { return state.get() == CANCELLED; }
+        public boolean isExpired() { return state.get() == EXPIRED; }
+    }
+
+    // Runs the task once after the delay
+    public Timer schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(task, toTicks(delay, unit), 0);
+    }
+
+    // Runs the task every period until the returned timer is cancelled
+    public Timer scheduleAtFixedRate(Runnable task, long period, TimeUnit unit) {
+        long ticks = toTicks(period, unit);
+        return add(task, ticks, ticks);
+    }
+
+    // Number of timers scheduled and not yet fired or cancelled
+    public int pendingTimers() {
+        return pendingCount.get();
+    }
+
+    public void shutdown() {
+        running = false;
+        ticker.interrupt();
+    }
+
+    private Timer add(Runnable task, long delayTicks, long periodTicks) {
+        Timer timer = new Timer(task, elapsedTicks() + Math.max(1, delayTicks), periodTicks);
+        pendingCount.incrementAndGet();
+        additions.offer(timer);
+        return timer;
+    }
+
+    private long toTicks(long delay, TimeUnit unit) {
+        long nanos = unit.toNanos(delay);
+        return (nanos + tickNanos - 1) / tickNanos;
+    }
+
+    private long elapsedTicks() {
+        return (System.nanoTime() - startNanos) / tickNanos;
+    }
+
+    //ticker thread: wait for each tick, then advance the wheel
+    private void runTicker() {
+        while (running) {
+            long wakeAt = startNanos + (currentTick + 1) * tickNanos;
+            long sleep = wakeAt - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (!running) return;
+                    continue;
+                }
+            }
+            currentTick++;
+            cascade();
+            expire(wheel[0][(int) (currentTick & SLOT_MASK)]);
+            processCancellations();
+            processAdditions();
+        }
+    }
+
+    // When a lower level wraps around, pull the next slot of the level above down
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            long below = currentTick >>> (SLOT_BITS * level);
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                return;
+            }
+            Bucket bucket = wheel[level][(int) (below & SLOT_MASK)];
+            Timer t = bucket.clear();
+            while (t != null) {
+                Timer next = t.next;
+                t.prev = t.next = null;
+                place(t);
+                t = next;
+            }
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Timer t = bucket.clear();
+        while (t != null) {
+            Timer next = t.next;
+            t.prev = t.next = null;
+            t.bucket = null;
+            fire(t);
+            t = next;
+        }
+    }
+
+    private void fire(Timer t) {
+        if (t.state.get() != PENDING) {
+            return;
+        }
+        try {
+            t.task.run();
+        } catch (RuntimeException e) {
+            System.out.println("Timer task failed: " + e.getMessage());
+        }
+        if (t.periodTicks > 0 && t.state.get() == PENDING) {
+            t.deadline = currentTick + t.periodTicks;
+            place(t);
+        } else if (t.state.compareAndSet(PENDING, EXPIRED)) {
+            pendingCount.decrementAndGet();
+        }
+    }
+
+    private void processCancellations() {
+        Timer t;
+        while ((t = cancellations.poll()) != null) {
+            if (t.bucket != null) {
+                t.bucket.remove(t);
+            }
+            pendingCount.decrementAndGet();
+        }
+    }
+
+    private void processAdditions() {
+        Timer t;
+        while ((t = additions.poll()) != null) {
+            if (t.state.get() != PENDING) {
+                continue; // cancelled before it reached the wheel
+            }
+            if (t.deadline <= currentTick) {
+                t.deadline = currentTick + 1;
+            }
+            place(t);
+        }
+    }
+
+    //puts a timer in the finest level whose range covers its deadline
+    private void place(Timer t) {
+        long remaining = t.deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && remaining >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        long deadline = Math.max(t.deadline, currentTick);
+        int slot = (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+        wheel[level][slot].add(t);
+    }
+
+    // Doubly linked list of timers, so removal is O(1)
+    private static final class Bucket {
+        private Timer head;
+
+        void add(Timer t) {
+            t.bucket = this;
+            t.prev = null;
+            t.next = head;
+            if (head != null) head.prev = t;
+            head = t;
+        }
+
+        void remove(Timer t) {
+            if (t.prev != null) t.prev.next = t.next; else head = t.next;
+            if (t.next != null) t.next.prev = t.prev;
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+
+        // Detaches and returns the whole list
+        Timer clear() {
+            Timer all = head;
+            head = null;
+            return all;
+        }
+    }
+}
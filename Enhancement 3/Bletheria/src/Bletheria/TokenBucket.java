@@ -0,0 +1,34 @@
+package Bletheria;
+
+/**
+ * TokenBucket is a small rate limiter used to throttle commands per session.
+ *
+ * The bucket holds up to 'capacity' tokens and refills at a steady rate.
+ * Each command takes one token; when the bucket is empty the command is
+ * rejected right away instead of queueing behind a flooding client.
+ */
+public class TokenBucket {
+    private final double capacity;        // burst size
+    private final double refillPerNano;   // steady-state rate
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(int capacity, double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1_000_000_000.0;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    // Takes one token if available; never blocks
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+        if (tokens < 1.0) {
+            return false;
+        }
+        tokens -= 1.0;
+        return true;
+    }
+}
@@ -0,0 +1,190 @@
+package Bletheria;
+
+/**
+ * UserDirectory is the small shared database that sits in front of the
+ * shards of a ShardedStateStore. It hands out user IDs (so they are unique
+ * across shards) and maps each username to its ID, which is what lets a
+ * login find the right shard. Credentials and saves live on the shard.
+ *
+ * A registration reserves the name here first and stores the account on
+ * its shard second, so a new row is marked pending until the shard has
+ * the account. Rows still pending when the store opens were left by a
+ * crash in between; ShardedStateStore confirms or releases them then, so
+ * the username doesn't stay taken by an account that doesn't exist.
+ *
+ * It also records how many shards the data was written with and refuses
+ * to open with a different count, since that would send users to the
+ * wrong files.
+ */
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserDirectory implements AutoCloseable {
+    private final ConnectionPool pool;
+
+    public UserDirectory(String url, int shards) {
+        pool = new ConnectionPool(url, 2, 5000);
+        try (ConnectionPool.Lease lease = pool.borrow();
+             Statement stmt = lease.connection().createStatement()) {
+            stmt.execute("PRAGMA journal_mode = WAL");
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS user_directory (
+                    user_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    username TEXT UNIQUE NOT NULL,
+                    pending INTEGER NOT NULL DEFAULT 0
+                );
+                """);
+            DatabaseManager.addColumnIfMissing(stmt, "user_directory", "pending", "INTEGER NOT NULL DEFAULT 0");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_directory_pending ON user_directory(user_id) WHERE pending = 1");
+            stmt.execute("CREATE TABLE IF NOT EXISTS directory_meta (name TEXT PRIMARY KEY, value TEXT NOT NULL)");
+            stmt.execute("INSERT OR IGNORE INTO directory_meta(name, value) VALUES('shards', '" + shards + "')");
+            try (ResultSet rs = stmt.executeQuery("SELECT value FROM directory_meta WHERE name = 'shards'")) {
+                int recorded = rs.next() ? Integer.parseInt(rs.getString(1)) : shards;
+                if (recorded != shards) {
+                    throw new IllegalStateException("Directory " + url + " was created for " + recorded
+                        + " shards, not " + shards + "; to change the count, export with BulkTransfer"
+                        + " and import into a new set of files");
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error creating user directory: " + e.getMessage());
+        }
+    }
+
+    // Claims a new user ID for the username, or -1 if it is taken; the row stays pending until confirm()
+    public int reserve(String username) {
+        String sql = "INSERT OR IGNORE INTO user_directory(username, pending) VALUES(?, 1)";
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement ps = lease.prepare(sql, Statement.RETURN_GENERATED_KEYS);
+            ps.setString(1, username);
+            if (ps.executeUpdate() == 0) {
+                return -1;
+            }
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        } catch (SQLException e) {
+            System.out.println("Directory error: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Claims accounts that already have user IDs (a BulkTransfer import).
+     * The rows are pending until confirm(), like reserve()'s.
+     * @return for each account, whether the directory now maps its username
+     *         to its ID; true also for rows an earlier, interrupted run claimed
+     */
+    public boolean[] claim(int[] userIds, String[] usernames) throws SQLException {
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            Connection conn = lease.connection();
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement insert = lease.prepare(
+                    "INSERT OR IGNORE INTO user_directory(user_id, username, pending) VALUES(?, ?, 1)");
+                for (int i = 0; i < userIds.length; i++) {
+                    insert.setInt(1, userIds[i]);
+                    insert.setString(2, usernames[i]);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                PreparedStatement check = lease.prepare(
+                    "SELECT 1 FROM user_directory WHERE user_id = ? AND username = ?");
+                boolean[] claimed = new boolean[userIds.length];
+                for (int i = 0; i < userIds.length; i++) {
+                    check.setInt(1, userIds[i]);
+                    check.setString(2, usernames[i]);
+                    try (ResultSet rs = check.executeQuery()) {
+                        claimed[i] = rs.next();
+                    }
+                }
+                conn.commit();
+                return claimed;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // Marks reserved rows as backed by an account on their shard
+    public void confirm(int... userIds) {
+        if (userIds.length == 0) {
+            return;
+        }
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            Connection conn = lease.connection();
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement ps = lease.prepare("UPDATE user_directory SET pending = 0 WHERE user_id = ?");
+                for (int userId : userIds) {
+                    ps.setInt(1, userId);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            // harmless: the rows stay pending and are confirmed on the next open
+            System.out.println("Directory error: " + e.getMessage());
+        }
+    }
+
+    // IDs of rows reserved but never confirmed
+    public List<Integer> pending() {
+        List<Integer> ids = new ArrayList<>();
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement ps = lease.prepare("SELECT user_id FROM user_directory WHERE pending = 1");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Directory error: " + e.getMessage());
+        }
+        return ids;
+    }
+
+    // Undoes reserve() when the shard could not store the user
+    public void release(int userId) {
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement ps = lease.prepare("DELETE FROM user_directory WHERE user_id = ?");
+            ps.setInt(1, userId);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            System.out.println("Directory error: " + e.getMessage());
+        }
+    }
+
+    // The user's ID, or -1 if the username is unknown
+    public int lookup(String username) {
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            PreparedStatement ps = lease.prepare("SELECT user_id FROM user_directory WHERE username = ?");
+            ps.setString(1, username);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        } catch (SQLException e) {
+            System.out.println("Directory error: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
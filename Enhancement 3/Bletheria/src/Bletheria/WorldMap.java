@@ -5,6 +5,12 @@ package Bletheria;
  * It also handles special logic such as removing the secret ending
  * if the player chooses Wisdom, and provides pathfinding utilities
  * for the Algorithms & Data Structures enhancement.
+ *
+ * Shared-world mode: one WorldMap is used by every session, so each room
+ * item is a single contested resource. Claims go through a lock-free
+ * compare-and-set on the room's item slot and the item respawns on the
+ * timing wheel. Because the map is shared, Wisdom players are kept out of
+ * the secret area per player instead of by removing it from the map.
  */
 import java.util.HashMap;
 import java.util.Map;
@@ -14,15 +20,64 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class WorldMap {
     // All rooms in the game, looked up by room name
     private final Map<String, Room> rooms = new HashMap<>();
+    private static final String SECRET_ROOM = "Secret Cavern";
+
+    private final TimingWheel respawnTimers; // null unless shared
+    private final long respawnMillis;
 
     public WorldMap() {
+        this(null, 0);
+    }
+
+    private WorldMap(TimingWheel respawnTimers, long respawnMillis) {
+        this.respawnTimers = respawnTimers;
+        this.respawnMillis = respawnMillis;
         buildWorld();
     }
 
+    // Builds one world to be shared by all sessions; claimed items respawn after the delay
+    public static WorldMap shared(TimingWheel timers, long respawnDelay, TimeUnit unit) {
+        return new WorldMap(timers, unit.toMillis(respawnDelay));
+    }
+
+    public boolean isShared() { return respawnTimers != null; }
+
+    /**
+     * Tries to take a room's item for one player. In a per-player world the
+     * item always stays on the pedestal; in a shared world only one claim
+     * wins and the item comes back after the respawn delay.
+     */
+    public boolean claimItem(Room room, String item) {
+        if (!isShared()) {
+            return true;
+        }
+        if (!room.claimItem(item)) {
+            return false;
+        }
+        respawnTimers.schedule(room::respawnItem, respawnMillis, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    // The room whose pedestal holds (or respawns) an item, or null
+    public Room findItemRoom(String item) {
+        for (Room room : rooms.values()) {
+            if (room.getSpawnItem() != null && room.getSpawnItem().equalsIgnoreCase(item)) {
+                return room;
+            }
+        }
+        return null;
+    }
+
+    // True if this player may not enter the room (secret area for Wisdom in a shared world)
+    public boolean isLockedFor(String roomName, String attributeChoice) {
+        return isShared() && SECRET_ROOM.equals(roomName) && "Wisdom".equals(attributeChoice);
+    }
+
     // Accessors
     public Room getRoom(String name) { return rooms.get(name); }
     public boolean hasRoom(String name) { return rooms.containsKey(name); }
@@ -46,11 +101,12 @@ public class WorldMap {
         return null;
     }
 
-   //removes secret cavern
+   //removes secret cavern (per-player worlds only; shared worlds use isLockedFor)
     public void lockSecretEnding() {
+        if (isShared()) return;
         Room hut = rooms.get("Forgotten Hut of Secret Spaces");
         if (hut != null) hut.removeExit("East");  // remove path to Secret Cavern
-        rooms.remove("Secret Cavern");            // remove the room itself
+        rooms.remove(SECRET_ROOM);                // remove the room itself
     }
 
     /**
@@ -0,0 +1,230 @@
+package Bletheria;
+
+/**
+ * Crash-injection tests for JournalStateStore: each one closes a journal,
+ * damages its files the way a crash would, and checks what recovery
+ * brings back.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalStateStoreTest {
+    private static final int HEADER_BYTES = 8;   // length + CRC, see JournalStateStore
+    private static final String[] ROOMS = {
+        "Ashen Foyer", "The Acrid Swamp", "Rotten Forrest", "Wiwaria Common", "Secret Cavern"
+    };
+    private static final String[] ITEMS = { "Potion", "Mask", "Wand", "Grieves", "Cloak", "Key" };
+
+    @TempDir
+    Path dir;
+
+    private JournalStateStore open(int segmentBytes, int compactAfter) {
+        return new JournalStateStore(dir, segmentBytes, compactAfter, new PasswordHasher(1_000));
+    }
+
+    @Test
+    void tornTailKeepsEveryRecordBeforeIt() throws IOException {
+        JournalStateStore db = open(64 * 1024, 100);
+        int id = db.registerUser("ana", "secret");
+        Player player = new Player("ana", "Wisdom", "Ashen Foyer", id);
+        db.savePlayerState(player);
+        player.setCurrentRoom("The Acrid Swamp");
+        db.savePlayerState(player);
+        player.setCurrentRoom("Secret Cavern");
+        db.savePlayerState(player);
+        db.close();
+
+        // The process died while copying the last record
+        Path segment = onlySegment();
+        List<Integer> records = recordStarts(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(records.get(records.size() - 1) + HEADER_BYTES + 2);
+        }
+
+        db = open(64 * 1024, 100);
+        assertEquals(1, db.getTornRecords());
+        assertEquals("The Acrid Swamp", db.loadPlayerState(id).currentRoom);
+        assertEquals(id, db.authenticateUser("ana", "secret"));
+
+        // Writing resumes in a fresh segment and survives the next restart
+        player.setCurrentRoom("Wiwaria Common");
+        db.savePlayerState(player);
+        db.close();
+        db = open(64 * 1024, 100);
+        assertEquals("Wiwaria Common", db.loadPlayerState(id).currentRoom);
+        db.close();
+    }
+
+    @Test
+    void recordWithBadChecksumIsRejected() throws IOException {
+        JournalStateStore db = open(64 * 1024, 100);
+        int id = db.registerUser("ana", "secret");
+        Player player = new Player("ana", "Wisdom", "Ashen Foyer", id);
+        db.savePlayerState(player);
+        player.setCurrentRoom("Secret Cavern");
+        player.addItem("Key");
+        db.savePlayerState(player);
+        db.close();
+
+        // Flip a bit in the last record's payload, leaving its length intact
+        Path segment = onlySegment();
+        List<Integer> records = recordStarts(segment);
+        int last = records.get(records.size() - 1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            long at = last + HEADER_BYTES + 1;
+            channel.read(one, at);
+            one.put(0, (byte) (one.get(0) ^ 0x10)).rewind();
+            channel.write(one, at);
+        }
+
+        db = open(64 * 1024, 100);
+        assertEquals(1, db.getTornRecords());
+        PlayerState saved = db.loadPlayerState(id);
+        assertEquals("Ashen Foyer", saved.currentRoom);
+        assertTrue(saved.inventory.isEmpty());
+        db.close();
+    }
+
+    @Test
+    void interruptedCompactionRecoversNewestStatePerUser() throws Exception {
+        Random random = new Random(44);
+        Map<Integer, Player> players = new HashMap<>();
+        Map<Integer, PlayerState> expected = new HashMap<>();
+
+        // Several sealed segments, never compacted
+        JournalStateStore db = open(512, 1_000);
+        for (int i = 0; i < 5; i++) {
+            int id = db.registerUser("user" + i, "pw" + i);
+            players.put(id, new Player("user" + i, "Perception", "Ashen Foyer", id));
+        }
+        saveRandomly(db, players, expected, random, 60);
+        db.close();
+        Path before = Files.createDirectory(dir.resolveSibling(dir.getFileName() + "-before"));
+        for (Path file : segmentFiles()) {
+            Files.copy(file, before.resolve(file.getFileName()));
+        }
+
+        // Reopen with compaction on and keep saving until one has run
+        db = open(512, 2);
+        for (int round = 0; round < 200 && db.getCompactions() == 0; round++) {
+            saveRandomly(db, players, expected, random, 20);
+            Thread.sleep(5);
+        }
+        assertNotEquals(0, db.getCompactions(), "compaction never ran");
+        db.close();
+
+        // Crash before the old generation was deleted, with a half-written copy left over
+        assertTrue(segmentFiles().stream().anyMatch(p -> !p.getFileName().toString().endsWith("-g0.log")));
+        int restored = 0;
+        try (Stream<Path> old = Files.list(before)) {
+            for (Path file : (Iterable<Path>) old::iterator) {
+                Path back = dir.resolve(file.getFileName());
+                if (!Files.exists(back)) {
+                    Files.copy(file, back);
+                    restored++;
+                }
+            }
+        }
+        assertNotEquals(0, restored);
+        Path tmp = dir.resolve("segment-000999-g9.log.tmp");
+        Files.write(tmp, new byte[] { 1, 2, 3 });
+
+        db = open(512, 2);
+        assertFalse(Files.exists(tmp));
+        assertSameStates(expected, db);
+        db.close();
+    }
+
+    @Test
+    void reopenAfterCloseLosesNoSave() {
+        Random random = new Random(7);
+        Map<Integer, Player> players = new HashMap<>();
+        Map<Integer, PlayerState> expected = new HashMap<>();
+
+        JournalStateStore db = open(1024, 3);
+        for (int i = 0; i < 20; i++) {
+            int id = db.registerUser("user" + i, "pw" + i);
+            players.put(id, new Player("user" + i, i % 2 == 0 ? "Wisdom" : "Perception", "Ashen Foyer", id));
+        }
+        saveRandomly(db, players, expected, random, 2_000);
+        db.close();
+
+        db = open(1024, 3);
+        assertSameStates(expected, db);
+        for (int i = 0; i < 20; i++) {
+            assertNotEquals(-1, db.authenticateUser("user" + i, "pw" + i));
+        }
+        int[] visited = { 0 };
+        db.forEachPlayerState(state -> visited[0]++);
+        assertEquals(expected.size(), visited[0]);
+        db.close();
+    }
+
+    //---- helpers
+
+    private static void saveRandomly(StateStore db, Map<Integer, Player> players,
+                                     Map<Integer, PlayerState> expected, Random random, int saves) {
+        List<Integer> ids = new ArrayList<>(players.keySet());
+        for (int i = 0; i < saves; i++) {
+            Player player = players.get(ids.get(random.nextInt(ids.size())));
+            player.setCurrentRoom(ROOMS[random.nextInt(ROOMS.length)]);
+            if (random.nextInt(4) == 0) {
+                player.addItem(ITEMS[random.nextInt(ITEMS.length)]);
+            }
+            db.savePlayerState(player);
+            expected.put(player.getUserId(), PlayerState.of(player));
+        }
+    }
+
+    private static void assertSameStates(Map<Integer, PlayerState> expected, StateStore db) {
+        for (PlayerState want : expected.values()) {
+            PlayerState got = db.loadPlayerState(want.userId);
+            assertEquals(want.currentRoom, got.currentRoom, "room of user " + want.userId);
+            assertEquals(want.attribute, got.attribute, "attribute of user " + want.userId);
+            assertEquals(Set.copyOf(want.inventory), Set.copyOf(got.inventory), "items of user " + want.userId);
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    private Path onlySegment() throws IOException {
+        List<Path> files = segmentFiles();
+        assertEquals(1, files.size(), "expected one segment with records: " + files);
+        return files.get(0);
+    }
+
+    //offsets of the records in a segment, found by walking the length fields
+    private static List<Integer> recordStarts(Path segment) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<Integer> starts = new ArrayList<>();
+        int pos = 0;
+        while (pos + HEADER_BYTES <= buf.limit() && buf.getInt(pos) > 0) {
+            starts.add(pos);
+            pos += HEADER_BYTES + buf.getInt(pos);
+        }
+        return starts;
+    }
+}
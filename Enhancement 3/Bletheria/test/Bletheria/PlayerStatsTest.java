@@ -0,0 +1,36 @@
+package Bletheria;
+
+/**
+ * Tests for PlayerStats.reconcile: the first pass loads the counters
+ * without calling it drift, and later passes count real corrections.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class PlayerStatsTest {
+    @Test
+    void firstReconcileLoadsWithoutDrift() {
+        InMemoryStateStore store = new InMemoryStateStore(new PasswordHasher(1_000));
+        for (String name : new String[] { "ana", "bo", "cy" }) {
+            int id = store.registerUser(name, "secret");
+            store.savePlayerState(new Player(name, "Wisdom", "Ashen Foyer", id));
+        }
+        PlayerStats stats = new PlayerStats(new EndingResolver());
+
+        assertEquals(0, stats.reconcile(store));
+        assertEquals(0, stats.getLastDrift());
+        assertEquals(3, stats.totalPlayers());
+        assertEquals(3L, stats.playersPerRoom().get("Ashen Foyer"));
+
+        // a save the stats never saw is drift on the next pass
+        int id = store.registerUser("dee", "secret");
+        Player dee = new Player("dee", "Perception", "Secret Cavern", id);
+        dee.addItem("Key");
+        store.savePlayerState(dee);
+        assertEquals(1, stats.reconcile(store));
+        assertEquals(1, stats.getLastDrift());
+        assertEquals(4, stats.totalPlayers());
+        assertEquals(0, stats.reconcile(store));
+    }
+}
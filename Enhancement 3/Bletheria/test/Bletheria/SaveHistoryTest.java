@@ -0,0 +1,125 @@
+package Bletheria;
+
+/**
+ * Tests for SaveHistory on a real SQLite database (through
+ * DatabaseManager): every kept version rebuilds exactly from its keyframe
+ * and diffs, pruning keeps whole keyframe groups, and slot saves don't
+ * collide with the write-behind save writer.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SaveHistoryTest {
+    // Defaults of -Dbletheria.history.depth and -Dbletheria.history.keyframeEvery
+    private static final int HISTORY_DEPTH = 32;
+    private static final int KEYFRAME_EVERY = 8;
+    private static final String[] ROOMS = {
+        "Ashen Foyer", "The Acrid Swamp", "Rotten Forrest", "Wiwaria Common", "Secret Cavern"
+    };
+
+    @TempDir
+    Path dir;
+
+    private DatabaseManager db;
+    private int userId;
+
+    @BeforeEach
+    void open() {
+        db = new DatabaseManager("jdbc:sqlite:" + dir.resolve("bletheria.db"), 2);
+        userId = db.registerUser("ana", "secret");
+    }
+
+    @AfterEach
+    void close() {
+        db.close();
+    }
+
+    // Saves 'count' versions to the slot, moving, picking things up and now and then losing items
+    private List<PlayerState> saveVersions(Player player, String slot, int count) {
+        List<PlayerState> saved = new ArrayList<>();
+        for (int v = 1; v <= count; v++) {
+            player.setCurrentRoom(ROOMS[v % ROOMS.length]);
+            player.addItem("Item" + v);
+            if (v % 5 == 0) {
+                // a restore that drops items forces a full version mid-group
+                PlayerState fewer = PlayerState.of(player);
+                fewer.inventory.subList(0, fewer.inventory.size() / 2).clear();
+                player.restoreTo(fewer);
+            }
+            assertEquals(v, db.saveToSlot(player, slot));
+            saved.add(PlayerState.of(player));
+        }
+        return saved;
+    }
+
+    private static void assertSameState(PlayerState expected, PlayerState actual) {
+        assertNotNull(actual);
+        assertEquals(expected.currentRoom, actual.currentRoom);
+        assertEquals(expected.attribute, actual.attribute);
+        assertEquals(Set.copyOf(expected.inventory), Set.copyOf(actual.inventory));
+    }
+
+    @Test
+    void everyVersionRebuildsFromItsKeyframe() {
+        Player player = new Player("ana", "Wisdom", "Ashen Foyer", userId);
+        List<PlayerState> saved = saveVersions(player, "s", 3 * KEYFRAME_EVERY + 3);
+
+        for (int v = 1; v <= saved.size(); v++) {
+            assertSameState(saved.get(v - 1), db.loadFromSlot(userId, "s", v));
+        }
+        assertSameState(saved.get(saved.size() - 1), db.loadFromSlot(userId, "s", 0));   // 0 = latest
+    }
+
+    @Test
+    void missingSlotOrVersionLoadsNull() {
+        Player player = new Player("ana", "Wisdom", "Ashen Foyer", userId);
+        saveVersions(player, "s", 3);
+
+        assertNull(db.loadFromSlot(userId, "s", 4));
+        assertNull(db.loadFromSlot(userId, "s", 999));
+        assertNull(db.loadFromSlot(userId, "other", 0));
+        assertNull(db.loadFromSlot(userId, "other", 1));
+    }
+
+    @Test
+    void pruningKeepsTheLastVersionsRestorable() {
+        Player player = new Player("ana", "Perception", "Ashen Foyer", userId);
+        int count = 2 * HISTORY_DEPTH - 4;
+        List<PlayerState> saved = saveVersions(player, "s", count);
+
+        List<SaveHistory.Entry> kept = db.listSlots(userId);
+        assertTrue(kept.size() >= HISTORY_DEPTH && kept.size() < HISTORY_DEPTH + KEYFRAME_EVERY,
+                   "kept " + kept.size());
+        assertEquals(count, kept.get(0).version());   // newest first
+        long oldest = kept.get(kept.size() - 1).version();
+        assertEquals(1, (oldest - 1) % KEYFRAME_EVERY + 1);   // a whole group: starts on a keyframe
+
+        for (long v = oldest; v <= count; v++) {
+            assertSameState(saved.get((int) v - 1), db.loadFromSlot(userId, "s", v));
+        }
+        assertNull(db.loadFromSlot(userId, "s", oldest - 1));
+    }
+
+    @Test
+    void slotSavesWaitForTheSaveWriter() {
+        Player player = new Player("ana", "Wisdom", "Ashen Foyer", userId);
+        for (int v = 1; v <= 40; v++) {
+            player.addItem("Item" + v);
+            // saveToSlot queues a write-behind save first; both write the same file
+            assertEquals(v, db.saveToSlot(player, "s"));
+        }
+        db.flushSaves();
+        assertEquals(40, db.loadPlayerState(userId).inventory.size());
+    }
+}
@@ -0,0 +1,85 @@
+package Bletheria;
+
+/**
+ * Tests for SaveQueue's failure handling, with a batch writer that always
+ * rejects one user's state.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class SaveQueueTest {
+    private static final int BAD_USER = 13;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final Map<Integer, PlayerState> written = new ConcurrentHashMap<>();
+    private final AtomicInteger badAttempts = new AtomicInteger();
+
+    // Writes the batch unless it holds BAD_USER, like a constraint that rejects one row
+    private void write(List<PlayerState> batch) throws SQLException {
+        for (PlayerState state : batch) {
+            if (state.userId == BAD_USER) {
+                badAttempts.incrementAndGet();
+                throw new SQLException("NOT NULL constraint failed");
+            }
+        }
+        for (PlayerState state : batch) {
+            written.put(state.userId, state);
+        }
+    }
+
+    private static PlayerState state(int userId, String room) {
+        PlayerState state = new PlayerState();
+        state.userId = userId;
+        state.currentRoom = room;
+        state.attribute = "Wisdom";
+        return state;
+    }
+
+    @Test
+    void oneBadStateDoesNotHoldBackTheRest() {
+        SaveQueue queue = new SaveQueue(this::write, 5, MAX_ATTEMPTS);
+        try {
+            for (int id = 1; id <= 20; id++) {
+                queue.enqueue(state(id, "Ashen Foyer"));
+            }
+            queue.flush();
+
+            assertEquals(19, written.size());
+            assertNull(written.get(BAD_USER));
+            assertNotNull(queue.peek(BAD_USER));   // still reported as not durable
+            assertNull(queue.peek(1));
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    void retriesBackOffAndStopAtTheLimit() throws InterruptedException {
+        SaveQueue queue = new SaveQueue(this::write, 5, MAX_ATTEMPTS);
+        try {
+            queue.enqueue(state(BAD_USER, "Ashen Foyer"));
+            // backoff 10 + 20 ms before the last attempt; without a limit a 5 ms
+            // writer would have tried about a hundred times by then
+            Thread.sleep(500);
+            assertEquals(MAX_ATTEMPTS, badAttempts.get());
+            assertNotNull(queue.peek(BAD_USER));
+
+            // a newer save gets a fresh set of attempts
+            queue.enqueue(state(BAD_USER, "Secret Cavern"));
+            queue.flush();
+            assertTrue(badAttempts.get() > MAX_ATTEMPTS);
+        } finally {
+            queue.close();
+        }
+        assertNull(written.get(BAD_USER));
+    }
+}
@@ -0,0 +1,83 @@
+package Bletheria;
+
+/**
+ * Tests for SessionTokens: revocation, including across a restart when
+ * revocations are kept in a file, the saved key used when no secret is
+ * set, and the startup check of the secret.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SessionTokensTest {
+    private static final long TTL_SECONDS = 3600;
+
+    @TempDir
+    Path dir;
+
+    private static byte[] secret() {
+        byte[] secret = new byte[32];
+        Arrays.fill(secret, (byte) 7);
+        return secret;
+    }
+
+    @Test
+    void revokedTokenIsRejected() {
+        SessionTokens tokens = new SessionTokens(secret(), TTL_SECONDS);
+        String token = tokens.issue(42, "ana");
+        assertEquals(42, tokens.verify(token).userId());
+        tokens.revoke(token);
+        assertNull(tokens.verify(token));
+    }
+
+    @Test
+    void revocationSurvivesARestart() {
+        Path file = dir.resolve("revoked.txt");
+        SessionTokens before = new SessionTokens(secret(), TTL_SECONDS, file);
+        String revoked = before.issue(42, "ana");
+        String kept = before.issue(43, "bo");
+        before.revoke(revoked);
+
+        SessionTokens after = new SessionTokens(secret(), TTL_SECONDS, file);
+        assertNull(after.verify(revoked));
+        assertNotNull(after.verify(kept));
+    }
+
+    @Test
+    void savedKeyIsReusedByTheNextProcess() throws Exception {
+        Path keyFile = dir.resolve("token.key");
+        byte[] first = SessionTokens.loadOrCreateKey(keyFile);
+        assertEquals(32, first.length);
+        assertArrayEquals(first, SessionTokens.loadOrCreateKey(keyFile));
+
+        String token = new SessionTokens(first, TTL_SECONDS).issue(42, "ana");
+        SessionTokens next = new SessionTokens(SessionTokens.loadOrCreateKey(keyFile), TTL_SECONDS);
+        assertEquals(42, next.verify(token).userId());
+    }
+
+    @Test
+    void badSecretIsReportedNotThrown() {
+        String old = System.getProperty("bletheria.token.secret");
+        try {
+            System.setProperty("bletheria.token.secret", "not hex");
+            assertTrue(SessionTokens.secretProblem().contains("hex"));
+            System.setProperty("bletheria.token.secret", "abcd");
+            assertTrue(SessionTokens.secretProblem().contains("at least 32 bytes"));
+            System.setProperty("bletheria.token.secret", "ab".repeat(32));
+            assertNull(SessionTokens.secretProblem());
+        } finally {
+            if (old == null) {
+                System.clearProperty("bletheria.token.secret");
+            } else {
+                System.setProperty("bletheria.token.secret", old);
+            }
+        }
+    }
+}
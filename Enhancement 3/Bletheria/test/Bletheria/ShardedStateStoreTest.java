@@ -0,0 +1,100 @@
+package Bletheria;
+
+/**
+ * Tests for ShardedStateStore: recovering directory rows a crash left
+ * between the directory and the shard, and moving the data to a
+ * different shard count with BulkTransfer.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ShardedStateStoreTest {
+    @TempDir
+    Path dir;
+
+    private ShardedStateStore open(String name, int shards) {
+        return new ShardedStateStore("jdbc:sqlite:" + dir.resolve(name), shards);
+    }
+
+    @Test
+    void reservationWithoutAnAccountIsReleasedOnOpen() {
+        try (ShardedStateStore store = open("bletheria", 3)) {
+            // a crash after reserve() and before the shard insert
+            assertTrue(store.getDirectory().reserve("ana") > 0);
+        }
+        try (ShardedStateStore store = open("bletheria", 3)) {
+            assertTrue(store.getDirectory().pending().isEmpty());
+            int id = store.registerUser("ana", "secret");
+            assertNotEquals(-1, id);
+            assertEquals(id, store.authenticateUser("ana", "secret"));
+        }
+    }
+
+    @Test
+    void reservationWithAnAccountIsConfirmedOnOpen() throws Exception {
+        int id;
+        try (ShardedStateStore store = open("bletheria", 3)) {
+            // a crash after the shard insert and before confirm()
+            id = store.getDirectory().reserve("ana");
+            assertTrue(store.shardFor(id).insertUser(id, "ana", new PasswordHasher().hash("secret")));
+        }
+        try (ShardedStateStore store = open("bletheria", 3)) {
+            assertTrue(store.getDirectory().pending().isEmpty());
+            assertEquals(id, store.authenticateUser("ana", "secret"));
+            assertEquals(-1, store.registerUser("ana", "other"));
+        }
+    }
+
+    @Test
+    void bulkTransferMovesDataToAnotherShardCount() throws Exception {
+        Path file = dir.resolve("export.txt");
+        Map<String, Integer> ids = new HashMap<>();
+        try (ShardedStateStore store = open("old", 3)) {
+            for (int i = 0; i < 40; i++) {
+                String name = "user" + i;
+                int id = store.registerUser(name, "pw" + i);
+                ids.put(name, id);
+                if (i % 2 == 0) {
+                    Player player = new Player(name, "Wisdom", "Secret Cavern", id);
+                    player.addItem("Key");
+                    store.savePlayerState(player);
+                }
+            }
+            BulkTransfer.Progress done = new BulkTransfer(store).exportTo(file, p -> { });
+            assertEquals(40, done.lines());
+        }
+
+        try (ShardedStateStore store = open("new", 5)) {
+            BulkTransfer.Progress done = new BulkTransfer(store).importFrom(file, p -> { });
+            assertEquals(40, done.written());
+            assertTrue(store.getDirectory().pending().isEmpty());
+            for (int i = 0; i < 40; i++) {
+                String name = "user" + i;
+                int id = ids.get(name);
+                assertEquals(id, store.authenticateUser(name, "pw" + i));
+                PlayerState state = store.loadPlayerState(id);
+                if (i % 2 == 0) {
+                    assertEquals("Secret Cavern", state.currentRoom);
+                    assertEquals(Set.of("Key"), Set.copyOf(state.inventory));
+                } else {
+                    assertNull(state);
+                }
+            }
+            // IDs carried over, so new registrations must not collide with them
+            int fresh = store.registerUser("newcomer", "pw");
+            assertTrue(fresh > 0 && !ids.containsValue(fresh));
+
+            // a second import of the same file changes nothing
+            assertEquals(0, new BulkTransfer(store).importFrom(file, p -> { }).written());
+        }
+    }
+}
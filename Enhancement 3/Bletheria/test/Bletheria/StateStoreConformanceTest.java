@@ -0,0 +1,136 @@
+package Bletheria;
+
+/**
+ * Runs the StateStore contract (see the StateStore Javadoc) against every
+ * backend, each on a fresh store in its own temporary directory.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class StateStoreConformanceTest {
+    // Cheap hashing: these tests are about storage, not password cost
+    private static final int TEST_ITERATIONS = 1_000;
+
+    @TempDir
+    Path dir;
+
+    private StateStore store;
+
+    static Stream<Arguments> backends() {
+        return Stream.of(
+            backend("memory", dir -> new InMemoryStateStore(new PasswordHasher(TEST_ITERATIONS))),
+            backend("journal", dir -> new JournalStateStore(dir.resolve("journal"), 64 * 1024, 4,
+                                                            new PasswordHasher(TEST_ITERATIONS))),
+            backend("sharded", dir -> new ShardedStateStore("jdbc:sqlite:" + dir.resolve("bletheria"), 3)),
+            backend("sqlite", dir -> new DatabaseManager("jdbc:sqlite:" + dir.resolve("bletheria.db"), 2)),
+            backend("stats over memory", dir -> new StatsStateStore(
+                new InMemoryStateStore(new PasswordHasher(TEST_ITERATIONS)), new PlayerStats(new EndingResolver()), 0)));
+    }
+
+    private static Arguments backend(String name, Function<Path, StateStore> factory) {
+        return Arguments.of(name, factory);
+    }
+
+    @AfterEach
+    void closeStore() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private StateStore open(Function<Path, StateStore> factory) {
+        store = factory.apply(dir);
+        return store;
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("backends")
+    void registerReturnsAnId(String name, Function<Path, StateStore> factory) {
+        StateStore db = open(factory);
+        int first = db.registerUser("ana", "secret");
+        int second = db.registerUser("bo", "secret");
+        assertNotEquals(-1, first);
+        assertNotEquals(-1, second);
+        assertNotEquals(first, second);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("backends")
+    void duplicateUsernameIsRejected(String name, Function<Path, StateStore> factory) {
+        StateStore db = open(factory);
+        assertNotEquals(-1, db.registerUser("ana", "secret"));
+        assertEquals(-1, db.registerUser("ana", "other"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("backends")
+    void wrongPasswordIsRejected(String name, Function<Path, StateStore> factory) {
+        StateStore db = open(factory);
+        int id = db.registerUser("ana", "secret");
+        assertEquals(id, db.authenticateUser("ana", "secret"));
+        assertEquals(-1, db.authenticateUser("ana", "wrong"));
+        assertEquals(-1, db.authenticateUser("nobody", "secret"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("backends")
+    void loadSeesTheLatestSaveImmediately(String name, Function<Path, StateStore> factory) {
+        StateStore db = open(factory);
+        int id = db.registerUser("ana", "secret");
+        Player player = new Player("ana", "Wisdom", "Ashen Foyer", id);
+        player.addItem("Wand");
+        db.savePlayerState(player);
+
+        PlayerState saved = db.loadPlayerState(id);
+        assertNotNull(saved);
+        assertEquals("Ashen Foyer", saved.currentRoom);
+        assertEquals("Wisdom", saved.attribute);
+        assertEquals(Set.of("Wand"), Set.copyOf(saved.inventory));
+
+        player.setCurrentRoom("Secret Cavern");
+        player.addItem("Key");
+        db.savePlayerState(player);
+
+        saved = db.loadPlayerState(id);
+        assertEquals("Secret Cavern", saved.currentRoom);
+        assertEquals(Set.of("Wand", "Key"), Set.copyOf(saved.inventory));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("backends")
+    void userWithoutSaveLoadsNull(String name, Function<Path, StateStore> factory) {
+        StateStore db = open(factory);
+        int id = db.registerUser("ana", "secret");
+        assertNull(db.loadPlayerState(id));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("backends")
+    void checkpointSkipsACleanPlayer(String name, Function<Path, StateStore> factory) {
+        StateStore db = open(factory);
+        int id = db.registerUser("ana", "secret");
+        Player player = new Player("ana", "Perception", "Ashen Foyer", id);
+
+        assertTrue(db.checkpoint(player));    // never saved
+        assertFalse(db.checkpoint(player));   // nothing changed since
+        player.addItem("Cloak");
+        assertTrue(db.checkpoint(player));
+        assertFalse(db.checkpoint(player));
+        assertEquals(List.of("Cloak"), db.loadPlayerState(id).inventory);
+    }
+}